@@ -0,0 +1,179 @@
+package my.android.audiobook.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Synthetic audio book library for benchmarks. The albums contain tiny but valid MP3, M4B and
+ * FLAC files, every second album has a cover and every tenth album folder is hidden.
+ */
+class LibraryFixture {
+    private static final String[] EXTENSIONS = {"mp3", "m4b", "flac"};
+
+    private static final byte[] MP3_STUB = createMp3Stub();
+    private static final byte[] M4B_STUB = createM4bStub();
+    private static final byte[] FLAC_STUB = createFlacStub();
+    // Start and end of image markers of a JPEG file
+    private static final byte[] COVER_STUB = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+
+    private final File mRoot;
+    private final int mAlbumCount;
+    private final int mTracksPerAlbum;
+    private int mChangeCount = 0;
+
+    LibraryFixture(File root, int albumCount, int tracksPerAlbum) {
+        mRoot = root;
+        mAlbumCount = albumCount;
+        mTracksPerAlbum = tracksPerAlbum;
+    }
+
+    File getRoot() {
+        return mRoot;
+    }
+
+    void generate() throws IOException {
+        delete();
+        for (int album = 0; album < mAlbumCount; album++) {
+            File albumDir = getAlbumDir(album);
+            if (!albumDir.mkdirs()) {
+                throw new IOException("Could not create " + albumDir);
+            }
+            for (int track = 0; track < mTracksPerAlbum; track++) {
+                writeTrack(albumDir, track);
+            }
+            if (album % 2 == 0) {
+                write(new File(albumDir, "cover.jpg"), COVER_STUB);
+            }
+        }
+    }
+
+    /*
+     * Add a track to the given fraction of the albums, spread evenly over the library. Returns
+     * the number of changed albums.
+     */
+    int changeAlbums(double fraction) throws IOException {
+        int changedAlbumCount = Math.max(1, (int) Math.round(mAlbumCount * fraction));
+        mChangeCount++;
+        for (int i = 0; i < changedAlbumCount; i++) {
+            int album = (int) ((long) i * mAlbumCount / changedAlbumCount);
+            writeTrack(getAlbumDir(album), mTracksPerAlbum + mChangeCount);
+        }
+        return changedAlbumCount;
+    }
+
+    void delete() {
+        deleteRecursively(mRoot);
+    }
+
+    private File getAlbumDir(int album) {
+        String format = album % 10 == 9 ? ".Hidden album %05d" : "Album %05d";
+        return new File(mRoot, String.format(Locale.ROOT, format, album));
+    }
+
+    private static void writeTrack(File albumDir, int track) throws IOException {
+        String extension = EXTENSIONS[track % EXTENSIONS.length];
+        String fileName = String.format(Locale.ROOT, "%03d Chapter.%s", track + 1, extension);
+        byte[] content;
+        switch (extension) {
+            case "mp3":
+                content = MP3_STUB;
+                break;
+            case "m4b":
+                content = M4B_STUB;
+                break;
+            default:
+                content = FLAC_STUB;
+                break;
+        }
+        write(new File(albumDir, fileName), content);
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(content);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /*
+     * Eight silent MPEG-1 Layer III frames with 128 kbit/s at 44.1 kHz
+     */
+    private static byte[] createMp3Stub() {
+        int frameLength = 144 * 128000 / 44100;
+        byte[] stub = new byte[8 * frameLength];
+        for (int frame = 0; frame < 8; frame++) {
+            int offset = frame * frameLength;
+            stub[offset] = (byte) 0xFF;
+            stub[offset + 1] = (byte) 0xFB;
+            stub[offset + 2] = (byte) 0x90;
+            stub[offset + 3] = (byte) 0x44;
+        }
+        return stub;
+    }
+
+    /*
+     * ftyp atom followed by a moov atom that only contains a movie header of one second
+     */
+    private static byte[] createM4bStub() {
+        byte[] stub = new byte[20 + 8 + 108];
+        putUInt32BE(stub, 0, 20);
+        putAscii(stub, 4, "ftypM4B ");
+        putAscii(stub, 16, "M4B ");
+        putUInt32BE(stub, 20, 8 + 108);
+        putAscii(stub, 24, "moov");
+        putUInt32BE(stub, 28, 108);
+        putAscii(stub, 32, "mvhd");
+        // Version 0 and flags, creation and modification time are left empty
+        putUInt32BE(stub, 48, 1000);
+        putUInt32BE(stub, 52, 1000);
+        return stub;
+    }
+
+    /*
+     * FLAC marker and a STREAMINFO block of one second stereo audio with 16 bit at 44.1 kHz
+     */
+    private static byte[] createFlacStub() {
+        byte[] stub = new byte[4 + 4 + 34];
+        putAscii(stub, 0, "fLaC");
+        // Last metadata block, type STREAMINFO, 34 bytes
+        stub[4] = (byte) 0x80;
+        stub[7] = 34;
+        // Minimum and maximum block size of 4096 samples
+        stub[8] = 0x10;
+        stub[10] = 0x10;
+        // 20 bits sample rate, 3 bits channels - 1, 5 bits bits per sample - 1 and 36 bits samples
+        stub[18] = (byte) 0x0A;
+        stub[19] = (byte) 0xC4;
+        stub[20] = (byte) 0x42;
+        stub[21] = (byte) 0xF0;
+        putUInt32BE(stub, 22, 44100);
+        return stub;
+    }
+
+    private static void putUInt32BE(byte[] buffer, int offset, long value) {
+        buffer[offset] = (byte) (value >> 24);
+        buffer[offset + 1] = (byte) (value >> 16);
+        buffer[offset + 2] = (byte) (value >> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static void putAscii(byte[] buffer, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer[offset + i] = (byte) value.charAt(i);
+        }
+    }
+}
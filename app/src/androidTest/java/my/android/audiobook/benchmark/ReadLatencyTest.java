@@ -0,0 +1,128 @@
+package my.android.audiobook.benchmark;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.IsolatedLibraryContext;
+import my.android.audiobook.helpers.Synchronizer;
+import my.android.audiobook.listeners.SynchronizationStateListener;
+import my.android.audiobook.models.Album;
+import my.android.audiobook.models.Directory;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads the album list ten times per second while a synthetic library is scanned, like the album
+ * list does while the synchronization writes. The test fails if the 95th percentile of the reads
+ * exceeds the bound, i.e. if the reads are blocked by the writes of the synchronization. Single
+ * slow reads, e.g. due to garbage collection, are only logged along with the maximum. The
+ * library is synchronized into a throwaway database, so the library of the app is not touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReadLatencyTest {
+    private static final String LOG_TAG = ReadLatencyTest.class.getSimpleName();
+    private static final String DATABASE_PREFIX = "read_latency_test.";
+    private static final int ALBUM_COUNT = 500;
+    private static final int TRACKS_PER_ALBUM = 10;
+    private static final long READ_INTERVAL = 100;
+    // Time in milliseconds 95% of the reads may take at most
+    private static final long MAX_READ_LATENCY = 100;
+    // Time in minutes the synchronization of the library may take at most
+    private static final long SYNCHRONIZATION_TIMEOUT = 5;
+
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+    private IsolatedLibraryContext mContext;
+    private LibraryFixture mFixture;
+    private Synchronizer mSynchronizer;
+
+    @Before
+    public void createLibrary() throws Exception {
+        mContext = new IsolatedLibraryContext(InstrumentationRegistry.getTargetContext(), DATABASE_PREFIX);
+        mFixture = new LibraryFixture(new File(mContext.getCacheDir(), "read-latency-test"), ALBUM_COUNT, TRACKS_PER_ALBUM);
+        mFixture.generate();
+
+        mSynchronizer = new Synchronizer(mContext);
+        mSynchronizer.setListener(new SynchronizationStateListener() {
+            @Override
+            public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+            }
+
+            @Override
+            public void onSynchronizationContinuing() {
+            }
+
+            @Override
+            public void onSynchronizationFinished() {
+                mFinished.countDown();
+            }
+        });
+    }
+
+    @After
+    public void deleteLibrary() {
+        mSynchronizer.setListener(null);
+        mSynchronizer.cancel();
+        mContext.delete();
+        mFixture.delete();
+    }
+
+    @Test
+    public void readsAreNotBlockedBySynchronization() {
+        mSynchronizer.addDirectory(new Directory(mFixture.getRoot().getAbsolutePath(), Directory.Type.PARENT_DIR));
+
+        ArrayList<Long> latencies = new ArrayList<>();
+        long deadline = SystemClock.elapsedRealtime() + TimeUnit.MINUTES.toMillis(SYNCHRONIZATION_TIMEOUT);
+        long nextRead = SystemClock.elapsedRealtime();
+        while (mFinished.getCount() > 0) {
+            assertTrue("The synchronization did not finish within " + SYNCHRONIZATION_TIMEOUT + " minutes",
+                    SystemClock.elapsedRealtime() < deadline);
+            long start = SystemClock.elapsedRealtime();
+            readAlbumList();
+            latencies.add(SystemClock.elapsedRealtime() - start);
+            nextRead += READ_INTERVAL;
+            SystemClock.sleep(Math.max(0, nextRead - SystemClock.elapsedRealtime()));
+        }
+        assertFalse("The synchronization finished before the first read", latencies.isEmpty());
+
+        Collections.sort(latencies);
+        long median = latencies.get(latencies.size() / 2);
+        // Nearest rank, the smallest latency that is at least as long as 95% of the reads
+        long p95 = latencies.get((latencies.size() * 95 + 99) / 100 - 1);
+        long max = latencies.get(latencies.size() - 1);
+        String result = String.format(Locale.ROOT, "%d reads during the synchronization: median %d ms, p95 %d ms, max %d ms",
+                latencies.size(), median, p95, max);
+        Log.i(LOG_TAG, result);
+        assertTrue(result + ", p95 exceeds " + MAX_READ_LATENCY + " ms", p95 <= MAX_READ_LATENCY);
+    }
+
+    /*
+     * Read the album list like the loader of the main activity and bind every row
+     */
+    private void readAlbumList() {
+        Cursor c = mContext.getContentResolver().query(BookContract.AlbumEntry.CONTENT_LIST_URI, Album.getListColumns(), null, null, null);
+        if (c == null) {
+            return;
+        }
+        while (c.moveToNext()) {
+            Album.getAlbumFromListCursor(c);
+        }
+        c.close();
+    }
+}
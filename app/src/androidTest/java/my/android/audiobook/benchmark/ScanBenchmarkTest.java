@@ -0,0 +1,162 @@
+package my.android.audiobook.benchmark;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import my.android.audiobook.BuildConfig;
+import my.android.audiobook.data.IsolatedLibraryContext;
+import my.android.audiobook.helpers.SyncStatistics;
+import my.android.audiobook.helpers.Synchronizer;
+import my.android.audiobook.listeners.SynchronizationStateListener;
+import my.android.audiobook.models.Directory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the synchronization of a synthetic library: a cold scan of a new directory, a rescan
+ * without changes and a rescan after 1% of the albums changed. The size of the library can be
+ * given with the instrumentation arguments albums and tracks, e.g.
+ * adb shell am instrument -w -e class my.android.audiobook.benchmark.ScanBenchmarkTest -e albums 2000 ...
+ * The report is written as JSON to the benchmarks folder of the app's external files directory.
+ * The library is synchronized into a throwaway database, so the library of the app is not touched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScanBenchmarkTest implements SynchronizationStateListener {
+    private static final String LOG_TAG = ScanBenchmarkTest.class.getSimpleName();
+    private static final String DATABASE_PREFIX = "scan_benchmark.";
+    private static final int DEFAULT_ALBUM_COUNT = 500;
+    private static final int DEFAULT_TRACKS_PER_ALBUM = 10;
+    private static final double CHANGED_ALBUM_FRACTION = 0.01;
+    // Time in minutes a single synchronization may take at most
+    private static final long SYNCHRONIZATION_TIMEOUT = 10;
+
+    private IsolatedLibraryContext mContext;
+    private LibraryFixture mFixture;
+    private Synchronizer mSynchronizer;
+    private int mAlbumCount;
+    private int mTracksPerAlbum;
+    private volatile CountDownLatch mFinished;
+
+    @Before
+    public void createLibrary() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        mAlbumCount = Integer.parseInt(arguments.getString("albums", String.valueOf(DEFAULT_ALBUM_COUNT)));
+        mTracksPerAlbum = Integer.parseInt(arguments.getString("tracks", String.valueOf(DEFAULT_TRACKS_PER_ALBUM)));
+
+        mContext = new IsolatedLibraryContext(InstrumentationRegistry.getTargetContext(), DATABASE_PREFIX);
+        mFixture = new LibraryFixture(new File(mContext.getCacheDir(), "scan-benchmark"), mAlbumCount, mTracksPerAlbum);
+        Log.i(LOG_TAG, "Generating " + mAlbumCount + " albums with " + mTracksPerAlbum + " tracks");
+        mFixture.generate();
+
+        mSynchronizer = new Synchronizer(mContext);
+        mSynchronizer.setListener(this);
+    }
+
+    @After
+    public void deleteLibrary() {
+        mSynchronizer.setListener(null);
+        mSynchronizer.cancel();
+        mContext.delete();
+        mFixture.delete();
+    }
+
+    @Test
+    public void scanLibrary() throws Exception {
+        Directory directory = new Directory(mFixture.getRoot().getAbsolutePath(), Directory.Type.PARENT_DIR);
+        JsonArray scenarios = new JsonArray();
+
+        mFinished = new CountDownLatch(1);
+        mSynchronizer.addDirectory(directory);
+        scenarios.add(getResult("cold_scan"));
+
+        mFinished = new CountDownLatch(1);
+        mSynchronizer.updateDirectory(directory);
+        scenarios.add(getResult("no_change_rescan"));
+
+        mFixture.changeAlbums(CHANGED_ALBUM_FRACTION);
+        mFinished = new CountDownLatch(1);
+        mSynchronizer.updateDirectory(directory);
+        scenarios.add(getResult("changed_rescan"));
+
+        writeReport(scenarios);
+    }
+
+    @Override
+    public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+    }
+
+    @Override
+    public void onSynchronizationContinuing() {
+    }
+
+    @Override
+    public void onSynchronizationFinished() {
+        mFinished.countDown();
+    }
+
+    /*
+     * Wait for the running synchronization and get its measurements
+     */
+    private JsonObject getResult(String scenario) throws InterruptedException {
+        assertTrue(scenario + " did not finish within " + SYNCHRONIZATION_TIMEOUT + " minutes",
+                mFinished.await(SYNCHRONIZATION_TIMEOUT, TimeUnit.MINUTES));
+        SyncStatistics statistics = mSynchronizer.getLastStatistics();
+        Log.i(LOG_TAG, scenario + ": " + statistics.getWallTime() + " ms");
+        JsonObject result = new Gson().toJsonTree(statistics).getAsJsonObject();
+        result.addProperty("scenario", scenario);
+        return result;
+    }
+
+    private void writeReport(JsonArray scenarios) throws IOException {
+        JsonObject report = new JsonObject();
+        report.addProperty("version", BuildConfig.VERSION_NAME);
+        report.addProperty("device", Build.MANUFACTURER + " " + Build.MODEL);
+        report.addProperty("sdk", Build.VERSION.SDK_INT);
+        report.addProperty("albums", mAlbumCount);
+        report.addProperty("tracks_per_album", mTracksPerAlbum);
+        report.addProperty("changed_album_fraction", CHANGED_ALBUM_FRACTION);
+        report.add("scenarios", scenarios);
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        Log.i(LOG_TAG, json);
+
+        // The report goes to the folders of the app, where it can be pulled from
+        Context context = InstrumentationRegistry.getTargetContext();
+        File reportDir = context.getExternalFilesDir("benchmarks");
+        if (reportDir == null) {
+            reportDir = new File(context.getFilesDir(), "benchmarks");
+        }
+        if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+            throw new IOException("Could not create " + reportDir);
+        }
+        File reportFile = new File(reportDir, "scan-" + BuildConfig.VERSION_NAME + "-" + System.currentTimeMillis() + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8");
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+        Log.i(LOG_TAG, "Report written to " + reportFile);
+    }
+}
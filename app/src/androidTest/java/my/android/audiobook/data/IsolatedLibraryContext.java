@@ -0,0 +1,60 @@
+package my.android.audiobook.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+/**
+ * Context that gives the code under test a throwaway library. Databases and files get a prefix,
+ * and the content resolver only knows a book provider of its own that works on the renamed
+ * database, so the library of the app is not touched. The context is its own application
+ * context, as e.g. the synchronizer only keeps the application context.
+ */
+public class IsolatedLibraryContext extends RenamingDelegatingContext {
+    private final MockContentResolver mContentResolver = new MockContentResolver();
+    private BookDbHelper mDbHelper;
+
+    public IsolatedLibraryContext(Context context, String prefix) {
+        super(context, prefix);
+        BookProvider provider = new BookProvider() {
+            @Override
+            protected BookDbHelper createDbHelper() {
+                mDbHelper = new BookDbHelper(IsolatedLibraryContext.this);
+                return mDbHelper;
+            }
+        };
+        // Creates the database helper of the provider
+        provider.attachInfo(this, null);
+        mContentResolver.addProvider(BookContract.CONTENT_AUTHORITY, provider);
+
+        // Start from an empty database, a previous run might have been killed
+        mDbHelper.close();
+        deleteDatabase(BookDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    public ContentResolver getContentResolver() {
+        return mContentResolver;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    /*
+     * Get the helper of the throwaway database
+     */
+    public BookDbHelper getDbHelper() {
+        return mDbHelper;
+    }
+
+    /*
+     * Close the throwaway database and delete it
+     */
+    public void delete() {
+        mDbHelper.close();
+        deleteDatabase(BookDbHelper.DATABASE_NAME);
+    }
+}
@@ -0,0 +1,148 @@
+package my.android.audiobook.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks with EXPLAIN QUERY PLAN that the queries of the provider use an index. Every query the
+ * app issues with a selection is listed here and fails if it scans a table without an index.
+ * Queries that read a whole table on purpose, e.g. the album list, must read it in the order of
+ * an index instead and fail if the rows are sorted in a temporary tree. The plans are taken of a
+ * new database, which is created with the schema of the current version.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+    private static final String DATABASE_PREFIX = "query_plan_test.";
+
+    private static final String AUDIO_FILE_ORDER = BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_SORT_KEY + " ASC";
+    private static final String ALBUM_LIST_TABLES = BookContract.AlbumEntry.TABLE_NAME + " LEFT JOIN " + BookContract.DirectoryEntry.TABLE_NAME
+            + " ON " + BookContract.AlbumEntry.TABLE_NAME + "." + BookContract.AlbumEntry.COLUMN_DIRECTORY
+            + " = " + BookContract.DirectoryEntry.TABLE_NAME + "." + BookContract.DirectoryEntry._ID;
+
+    private IsolatedLibraryContext mContext;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void openDatabase() {
+        mContext = new IsolatedLibraryContext(InstrumentationRegistry.getTargetContext(), DATABASE_PREFIX);
+        mDb = mContext.getDbHelper().getReadableDatabase();
+    }
+
+    @After
+    public void deleteDatabase() {
+        mContext.delete();
+    }
+
+    @Test
+    public void selectionsUseIndex() {
+        ArrayList<String> statements = new ArrayList<>();
+
+        // Audio files of an album, e.g. AlbumActivity and AudioFile.getAllAudioFilesInAlbum
+        statements.add(select(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_ALBUM, AUDIO_FILE_ORDER));
+        statements.add(select(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_ALBUM, null));
+        // Albums of a directory, Album.getAllAlbumsInDirectory
+        statements.add(select(BookContract.AlbumEntry.TABLE_NAME, BookContract.AlbumEntry.COLUMN_DIRECTORY, null));
+        // Bookmarks of an audio file, PlayActivity.getBookmarks
+        statements.add(select(BookContract.BookmarkEntry.TABLE_NAME, BookContract.BookmarkEntry.COLUMN_AUDIO_FILE, BookContract.BookmarkEntry.COLUMN_POSITION + " ASC"));
+
+        // Single rows given by their URI
+        statements.add(select(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry._ID, null));
+        statements.add(select(BookContract.AlbumEntry.TABLE_NAME, BookContract.AlbumEntry._ID, null));
+        statements.add(select(BookContract.BookmarkEntry.TABLE_NAME, BookContract.BookmarkEntry._ID, null));
+        statements.add(select(BookContract.DirectoryEntry.TABLE_NAME, BookContract.DirectoryEntry._ID, null));
+        statements.add(update(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_TIME, BookContract.AudioEntry._ID));
+        statements.add(update(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_COMPLETED_TIME, BookContract.AudioEntry._ID));
+        statements.add(update(BookContract.AlbumEntry.TABLE_NAME, BookContract.AlbumEntry.COLUMN_LAST_PLAYED, BookContract.AlbumEntry._ID));
+        statements.add(update(BookContract.BookmarkEntry.TABLE_NAME, BookContract.BookmarkEntry.COLUMN_POSITION, BookContract.BookmarkEntry._ID));
+
+        // Deletions of the provider, including the rows that belong to a deleted row
+        statements.add(delete(BookContract.DirectoryEntry.TABLE_NAME, BookContract.DirectoryEntry._ID));
+        statements.add(delete(BookContract.AlbumEntry.TABLE_NAME, BookContract.AlbumEntry._ID));
+        statements.add(delete(BookContract.AlbumEntry.TABLE_NAME, BookContract.AlbumEntry.COLUMN_DIRECTORY));
+        statements.add(delete(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry._ID));
+        statements.add(delete(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_ALBUM));
+        statements.add(delete(BookContract.BookmarkEntry.TABLE_NAME, BookContract.BookmarkEntry._ID));
+        statements.add(delete(BookContract.BookmarkEntry.TABLE_NAME, BookContract.BookmarkEntry.COLUMN_AUDIO_FILE));
+
+        StringBuilder errors = new StringBuilder();
+        for (String statement : statements) {
+            String plan = explain(statement);
+            for (String step : plan.split("\n")) {
+                // A table may only be read completely in the order of an index
+                if (step.startsWith("SCAN") && !step.contains("USING INDEX") && !step.contains("USING COVERING INDEX")) {
+                    errors.append("\nTable scan: ").append(statement).append('\n').append(plan);
+                    break;
+                }
+            }
+        }
+        assertTrue(errors.toString(), errors.length() == 0);
+    }
+
+    @Test
+    public void sortedQueriesUseIndexOrder() {
+        // The audio files of an album and the album list in both sort orders of the settings
+        ArrayList<String> statements = new ArrayList<>();
+        statements.add(select(BookContract.AudioEntry.TABLE_NAME, BookContract.AudioEntry.COLUMN_ALBUM, AUDIO_FILE_ORDER));
+        statements.add(SQLiteQueryBuilder.buildQueryString(false, ALBUM_LIST_TABLES, null, null, null, null,
+                BookContract.AlbumEntry.COLUMN_SORT_KEY + " ASC", null));
+        statements.add(SQLiteQueryBuilder.buildQueryString(false, ALBUM_LIST_TABLES, null, null, null, null,
+                BookContract.AlbumEntry.COLUMN_DIRECTORY + " ASC, " + BookContract.AlbumEntry.COLUMN_SORT_KEY + " ASC", null));
+
+        StringBuilder errors = new StringBuilder();
+        for (String statement : statements) {
+            String plan = explain(statement);
+            if (plan.contains("TEMP B-TREE")) {
+                errors.append("\nSorted without index: ").append(statement).append('\n').append(plan);
+            }
+        }
+        assertTrue(errors.toString(), errors.length() == 0);
+    }
+
+    private static String select(String table, String column, String sortOrder) {
+        return SQLiteQueryBuilder.buildQueryString(false, table, null, column + "=?", null, null, sortOrder, null);
+    }
+
+    private static String update(String table, String valueColumn, String column) {
+        return "UPDATE " + table + " SET " + valueColumn + "=? WHERE " + column + "=?";
+    }
+
+    private static String delete(String table, String column) {
+        return "DELETE FROM " + table + " WHERE " + column + "=?";
+    }
+
+    /*
+     * Get the query plan of the statement, one line per step. The arguments are bound as strings
+     * like the selection arguments of the content resolver.
+     */
+    private String explain(String statement) {
+        int argCount = statement.length() - statement.replace("?", "").length();
+        String[] args = new String[argCount];
+        for (int i = 0; i < argCount; i++) {
+            args[i] = "1";
+        }
+
+        StringBuilder plan = new StringBuilder();
+        Cursor c = mDb.rawQuery("EXPLAIN QUERY PLAN " + statement, args);
+        int detailIndex = c.getColumnIndex("detail");
+        while (c.moveToNext()) {
+            if (plan.length() > 0) {
+                plan.append('\n');
+            }
+            plan.append(c.getString(detailIndex));
+        }
+        c.close();
+        return plan.toString();
+    }
+}
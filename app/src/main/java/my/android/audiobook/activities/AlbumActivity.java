@@ -118,7 +118,7 @@ public class AlbumActivity extends AppCompatActivity implements LoaderManager.Lo
         mShowHiddenFiles = mPrefs.getBoolean(getString(R.string.settings_show_hidden_key), Boolean.getBoolean(getString(R.string.settings_show_hidden_default)));
 
         // Initialize the cursor adapter
-        mCursorAdapter = new AudioFileCursorAdapter(this, null);
+        mCursorAdapter = new AudioFileCursorAdapter(this, null, mAlbum);
 
         // Initialize synchronizer
         mSynchronizer = new Synchronizer(this);
@@ -250,7 +250,7 @@ public class AlbumActivity extends AppCompatActivity implements LoaderManager.Lo
 
         // Set up SwipeRefreshLayout onRefresh action
         mSwipeRefreshLayout = findViewById(R.id.swiperefresh);
-        mSwipeRefreshLayout.setOnRefreshListener(() -> mSynchronizer.updateDBTables());
+        mSwipeRefreshLayout.setOnRefreshListener(() -> mSynchronizer.updateDBTables(Synchronizer.FOREGROUND_TIME_BUDGET));
 
         // Set up the FAB onClickListener
         mPlayPauseFAB.setOnClickListener(view -> {
@@ -309,6 +309,10 @@ public class AlbumActivity extends AppCompatActivity implements LoaderManager.Lo
 
     @Override
     protected void onDestroy() {
+        // Only detach the activity, a synchronization that continues in the background is
+        // finished without it
+        mSynchronizer.setListener(null);
+
         if (mServiceBound) {
             unbindService(serviceConnection);
         }
@@ -325,14 +329,12 @@ public class AlbumActivity extends AppCompatActivity implements LoaderManager.Lo
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        String[] projection = {
-                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry._ID,
-                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE,
-        };
+        // The adapter creates the audio files from the cursor, so it needs all columns
+        String[] projection = AudioFile.getColumns();
 
         String sel = BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_ALBUM + "=?";
         String[] selArgs = {Long.toString(mAlbum.getID())};
-        String sortOrder = "CAST(" + BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE + " as SIGNED) ASC, LOWER(" + BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE + ") ASC";
+        String sortOrder = BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_SORT_KEY + " ASC";
 
         return new CursorLoader(this, BookContract.AudioEntry.CONTENT_URI, projection, sel, selArgs, sortOrder);
     }
@@ -452,12 +454,29 @@ public class AlbumActivity extends AppCompatActivity implements LoaderManager.Lo
         mDoNotBindService = false;
     }
 
+    @Override
+    public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(getString(R.string.synchronize_progress, processedAlbums, albumCount));
+        }
+    }
+
+    @Override
+    public void onSynchronizationContinuing() {
+        // Show the albums committed so far, the progress is still shown in the subtitle
+        getLoaderManager().restartLoader(0, null, AlbumActivity.this);
+        mSwipeRefreshLayout.setRefreshing(false);
+        Toast.makeText(getApplicationContext(), R.string.synchronize_continuing, Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public void onSynchronizationFinished() {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
+        }
         getLoaderManager().restartLoader(0, null, AlbumActivity.this);
         mSwipeRefreshLayout.setRefreshing(false);
         Toast.makeText(getApplicationContext(), R.string.synchronize_success, Toast.LENGTH_SHORT).show();
-
     }
 
     /*
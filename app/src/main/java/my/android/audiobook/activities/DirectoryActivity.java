@@ -66,6 +66,7 @@ public class DirectoryActivity extends AppCompatActivity  implements LoaderManag
         FloatingActionsMenu addDirectoryFAM = findViewById(R.id.add_directory_fam);
         FloatingActionButton addSubDirFAB = findViewById(R.id.add_sub_dir_fab);
         FloatingActionButton addParentDirFAB = findViewById(R.id.add_parent_dir_fab);
+        FloatingActionButton addRecursiveDirFAB = findViewById(R.id.add_recursive_dir_fab);
 
         // Set up overlay
         View overlay = findViewById(R.id.overlay);
@@ -89,11 +90,15 @@ public class DirectoryActivity extends AppCompatActivity  implements LoaderManag
 
         // Set up the FAB onClickListeners
         addSubDirFAB.setOnClickListener(v -> {
-            addDirectory(false);
+            addDirectory(Directory.Type.SUB_DIR);
             addDirectoryFAM.collapse();
         });
         addParentDirFAB.setOnClickListener(v -> {
-            addDirectory(true);
+            addDirectory(Directory.Type.PARENT_DIR);
+            addDirectoryFAM.collapse();
+        });
+        addRecursiveDirFAB.setOnClickListener(v -> {
+            addDirectory(Directory.Type.RECURSIVE_DIR);
             addDirectoryFAM.collapse();
         });
 
@@ -161,12 +166,11 @@ public class DirectoryActivity extends AppCompatActivity  implements LoaderManag
         mSynchronizer.setListener(this);
     }
 
-    private void addDirectory(boolean isParentDirectory) {
+    private void addDirectory(Directory.Type directoryType) {
         File baseDirectory = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_MUSIC);
         FileDialog fileDialog = new FileDialog(this, baseDirectory, null);
         fileDialog.setSelectDirectoryOption(true);
         fileDialog.addDirectoryListener(directory -> {
-            Directory.Type directoryType = isParentDirectory ? Directory.Type.PARENT_DIR : Directory.Type.SUB_DIR;
             Directory newDirectory = new Directory(directory.getAbsolutePath(), directoryType);
             if (allowAddDirectory(newDirectory)) {
                 mSynchronizer.addDirectory(newDirectory);
@@ -175,6 +179,13 @@ public class DirectoryActivity extends AppCompatActivity  implements LoaderManag
         fileDialog.showDialog();
     }
 
+    @Override
+    protected void onDestroy() {
+        // The synchronization continues in the background, but must not call back into this activity
+        mSynchronizer.setListener(null);
+        super.onDestroy();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         return new CursorLoader(this, BookContract.DirectoryEntry.CONTENT_URI, Directory.getColumns(), null, null, null);
@@ -199,8 +210,23 @@ public class DirectoryActivity extends AppCompatActivity  implements LoaderManag
         mCursorAdapter.swapCursor(null);
     }
 
+    @Override
+    public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(getString(R.string.synchronize_progress, processedAlbums, albumCount));
+        }
+    }
+
+    @Override
+    public void onSynchronizationContinuing() {
+        // Directories are synchronized without a time budget
+    }
+
     @Override
     public void onSynchronizationFinished() {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
+        }
         getLoaderManager().restartLoader(0, null, DirectoryActivity.this);
         Toast.makeText(getApplicationContext(), R.string.synchronize_success, Toast.LENGTH_SHORT).show();
     }
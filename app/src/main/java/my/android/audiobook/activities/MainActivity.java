@@ -47,6 +47,8 @@ import my.android.audiobook.receivers.PlayStatusReceiver;
 import my.android.audiobook.services.MediaPlayerService;
 import my.android.audiobook.R;
 import my.android.audiobook.helpers.Synchronizer;
+import my.android.audiobook.services.LibraryWatcherService;
+import my.android.audiobook.services.SyncJobService;
 import my.android.audiobook.adapters.AlbumCursorAdapter;
 import my.android.audiobook.data.BookContract;
 import my.android.audiobook.utils.DBAccessUtils;
@@ -63,6 +65,8 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
     private SharedPreferences mSharedPreferences;
     private boolean mDarkTheme;
     private boolean mShowHiddenFiles;
+    private boolean mTitleFromMetadata;
+    private boolean mCoverFromMetadata;
 
     // Database variables
     private static final int AUDIO_LOADER = 0;
@@ -115,6 +119,8 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
         mDarkTheme = mSharedPreferences.getBoolean(getString(R.string.settings_dark_key), Boolean.getBoolean(getString(R.string.settings_dark_default)));
         mShowHiddenFiles = mSharedPreferences.getBoolean(getString(R.string.settings_show_hidden_key), Boolean.getBoolean(getString(R.string.settings_show_hidden_default)));
+        mTitleFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_title_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_title_from_metadata_default)));
+        mCoverFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_cover_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_cover_from_metadata_default)));
 
         // Prepare the CursorLoader. Either re-connect with an existing one or start a new one.
         getLoaderManager().initLoader(AUDIO_LOADER, null, this);
@@ -126,6 +132,10 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         mSynchronizer = new Synchronizer(this);
         mSynchronizer.setListener(this);
 
+        // Start or stop watching and periodically synchronizing the library according to the settings
+        LibraryWatcherService.updateState(this);
+        SyncJobService.updateSchedule(this);
+
         // Initialize migrator
         mMigrator = new Migrator(this);
 
@@ -230,7 +240,7 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
 
         // Set up SwipeRefreshLayout onRefresh action
         mSwipeRefreshLayout = findViewById(R.id.swiperefresh);
-        mSwipeRefreshLayout.setOnRefreshListener(() -> mSynchronizer.updateDBTables());
+        mSwipeRefreshLayout.setOnRefreshListener(() -> mSynchronizer.updateDBTables(Synchronizer.FOREGROUND_TIME_BUDGET));
 
         mPlayPauseFAB = findViewById(R.id.play_pause_fab);
 
@@ -281,8 +291,8 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         if (sortOrderPref.equals(getString(R.string.settings_sort_order_by_directory_value))) {
             sortOrder += BookContract.AlbumEntry.COLUMN_DIRECTORY + " ASC, ";
         }
-        sortOrder += "CAST(" + BookContract.AlbumEntry.COLUMN_TITLE + " as SIGNED) ASC, LOWER(" + BookContract.AlbumEntry.COLUMN_TITLE + ") ASC";
-        return new CursorLoader(this, BookContract.AlbumEntry.CONTENT_URI, Album.getColumns(), null, null, sortOrder);
+        sortOrder += BookContract.AlbumEntry.COLUMN_SORT_KEY + " ASC";
+        return new CursorLoader(this, BookContract.AlbumEntry.CONTENT_LIST_URI, Album.getListColumns(), null, null, sortOrder);
     }
 
     @Override
@@ -348,6 +358,20 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             mSynchronizer.updateDBTables();
             mShowHiddenFiles = currentShowHiddenFiles;
         }
+        // Synchronize to read the tags or extract the covers if they are taken from the metadata now
+        boolean currentTitleFromMetadata;
+        boolean currentCoverFromMetadata;
+        currentTitleFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_title_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_title_from_metadata_default)));
+        currentCoverFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_cover_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_cover_from_metadata_default)));
+        if ((!mTitleFromMetadata && currentTitleFromMetadata) || (!mCoverFromMetadata && currentCoverFromMetadata)) {
+            mSwipeRefreshLayout.setRefreshing(true);
+            mSynchronizer.updateDBTables();
+        }
+        mTitleFromMetadata = currentTitleFromMetadata;
+        mCoverFromMetadata = currentCoverFromMetadata;
+        // The settings to watch and to periodically synchronize the library might have changed
+        LibraryWatcherService.updateState(this);
+        SyncJobService.updateSchedule(this);
         super.onRestart();
     }
 
@@ -360,6 +384,10 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
 
     @Override
     protected void onDestroy() {
+        // Only detach the activity, a synchronization that continues in the background is
+        // finished without it
+        mSynchronizer.setListener(null);
+
         if (mServiceBound) {
             unbindService(serviceConnection);
         }
@@ -445,7 +473,7 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
                 return true;
             case R.id.menu_synchronize:
                 mSwipeRefreshLayout.setRefreshing(true);
-                mSynchronizer.updateDBTables();
+                mSynchronizer.updateDBTables(Synchronizer.FOREGROUND_TIME_BUDGET);
                 return true;
             case R.id.menu_settings:
                 Intent settingsIntent = new Intent(this, SettingsActivity.class);
@@ -495,8 +523,26 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
         mDoNotBindService = false;
     }
 
+    @Override
+    public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(getString(R.string.synchronize_progress, processedAlbums, albumCount));
+        }
+    }
+
+    @Override
+    public void onSynchronizationContinuing() {
+        // Show the albums committed so far, the progress is still shown in the subtitle
+        getLoaderManager().restartLoader(0, null, MainActivity.this);
+        mSwipeRefreshLayout.setRefreshing(false);
+        Toast.makeText(getApplicationContext(), R.string.synchronize_continuing, Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public void onSynchronizationFinished() {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(null);
+        }
         getLoaderManager().restartLoader(0, null, MainActivity.this);
         mSwipeRefreshLayout.setRefreshing(false);
         Toast.makeText(getApplicationContext(), R.string.synchronize_success, Toast.LENGTH_SHORT).show();
@@ -527,6 +573,8 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             }
             mPlayPauseFAB.setVisibility(View.GONE);
             mDoNotBindService = true;
+            // The album is not playing anymore
+            mCursorAdapter.updateActiveAlbum();
         }
     };
 
@@ -10,10 +10,7 @@ import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Point;
-import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -42,6 +39,8 @@ import my.android.audiobook.services.MediaPlayerService;
 import my.android.audiobook.R;
 import my.android.audiobook.adapters.BookmarkCursorAdapter;
 import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.ProgressStore;
+import my.android.audiobook.helpers.CoverThumbnails;
 import my.android.audiobook.utils.BitmapUtils;
 import my.android.audiobook.utils.StorageUtil;
 import my.android.audiobook.utils.Utils;
@@ -59,7 +58,6 @@ public class PlayActivity extends AppCompatActivity {
     boolean mStopServiceOnDestroy = false;
     BroadcastReceiver mPlayStatusReceiver;
     BroadcastReceiver mNewAudioFileReceiver;
-    MediaMetadataRetriever mMetadataRetriever;
 
     // Audio File variables
     AudioFile mAudioFile;
@@ -128,7 +126,6 @@ public class PlayActivity extends AppCompatActivity {
 
 
         mAudioFile = AudioFile.getAudioFileById(this, currAudioId);
-        mMetadataRetriever = new MediaMetadataRetriever();
 
         setNewAudioFile();
         setAlbumCover();
@@ -257,6 +254,13 @@ public class PlayActivity extends AppCompatActivity {
         super.onRestart();
     }
 
+    @Override
+    protected void onStop() {
+        // Write the positions set with the seek bar while no audio file was played
+        ProgressStore.getInstance(this).flush();
+        super.onStop();
+    }
+
     @Override
     protected void onDestroy() {
         if (serviceBound) {
@@ -390,7 +394,7 @@ public class PlayActivity extends AppCompatActivity {
 
     private void storeAudioFiles() {
         // Store Serializable audioList in SharedPreferences
-        String sortOrder = "CAST(" + BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE + " as SIGNED) ASC, LOWER(" + BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE + ") ASC";
+        String sortOrder = BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_SORT_KEY + " ASC";
 
         ArrayList<AudioFile> audioList = AudioFile.getAllAudioFilesInAlbum(this, mAudioFile.getAlbumId(), sortOrder);
         ArrayList<Long> audioIdList = new ArrayList<>();
@@ -436,15 +440,7 @@ public class PlayActivity extends AppCompatActivity {
      */
     void setNewAudioFile() {
         // Set TextViews
-        String title = "";
-        if (mTitleFromMetadata) {
-            mMetadataRetriever.setDataSource(mAudioFile.getPath());
-            title = mMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-        }
-        if (title == null || title.isEmpty()) {
-            title = mAudioFile.getTitle();
-        }
-        mTitleTV.setText(title);
+        mTitleTV.setText(mAudioFile.getDisplayTitle(mTitleFromMetadata));
         mTimeTV.setText(Utils.formatTime(mAudioFile.getTime(), mAudioFile.getTime()));
         mAlbumTV.setText(mAudioFile.getAlbumTitle());
     }
@@ -465,15 +461,10 @@ public class PlayActivity extends AppCompatActivity {
         }
 
         if (mCoverFromMetadata) {
-            MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-            mmr.setDataSource(mAudioFile.getPath());
-
-            byte[] coverData = mmr.getEmbeddedPicture();
-
-            // Convert the byte array to a bitmap
-            if (coverData != null) {
-                Bitmap bitmap = BitmapFactory.decodeByteArray(coverData, 0, coverData.length);
-                mCoverIV.setImageBitmap(bitmap);
+            // The embedded cover has been extracted as thumbnail during the synchronization
+            String thumbnailPath = CoverThumbnails.getPath(this, mAudioFile.getAlbum(), CoverThumbnails.SIZE_PLAYER);
+            if (thumbnailPath != null) {
+                BitmapUtils.setImage(mCoverIV, thumbnailPath, reqSize);
             } else {
                 BitmapUtils.setImage(mCoverIV, mAudioFile.getCoverPath(), reqSize);
             }
@@ -895,10 +886,7 @@ public class PlayActivity extends AppCompatActivity {
             mAudioFile.setCompletedTime(newTime);
 
             // Update the completedTime column of the audiofiles table
-            Uri uri = ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, mAudioFile.getID());
-            ContentValues values = new ContentValues();
-            values.put(BookContract.AudioEntry.COLUMN_COMPLETED_TIME, newTime);
-            getContentResolver().update(uri, values, null, null);
+            ProgressStore.getInstance(this).saveCompletedTime(mAudioFile.getID(), newTime);
         }
     }
 
@@ -18,8 +18,8 @@ import my.android.audiobook.models.Album;
 import my.android.audiobook.models.AudioFile;
 import my.android.audiobook.R;
 import my.android.audiobook.data.BookContract;
+import my.android.audiobook.helpers.CoverThumbnails;
 import my.android.audiobook.utils.BitmapUtils;
-import my.android.audiobook.utils.DBAccessUtils;
 import my.android.audiobook.utils.StorageUtil;
 import my.android.audiobook.utils.Utils;
 
@@ -34,6 +34,9 @@ public class AlbumCursorAdapter extends CursorAdapter {
     private Context mContext;
     private SharedPreferences mPrefs;
     private LruCache<String, Bitmap> mImageCache;
+    // Album of the audio file that is currently played, -1 if none. It is determined once for
+    // every cursor instead of once for every row.
+    private long mActiveAlbumId = -1;
 
     public AlbumCursorAdapter(Context context, Cursor c) {
         super(context, c, 0);
@@ -58,6 +61,20 @@ public class AlbumCursorAdapter extends CursorAdapter {
         };
     }
 
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        mActiveAlbumId = getActiveAlbumId();
+        return super.swapCursor(newCursor);
+    }
+
+    /*
+     * Determine the album that is currently played again, e.g. after the playback was stopped
+     */
+    public void updateActiveAlbum() {
+        mActiveAlbumId = getActiveAlbumId();
+        notifyDataSetChanged();
+    }
+
     @Override
     public View newView(Context context, Cursor cursor, ViewGroup viewGroup) {
         return LayoutInflater.from(context).inflate(R.layout.album_item, viewGroup, false);
@@ -65,25 +82,25 @@ public class AlbumCursorAdapter extends CursorAdapter {
 
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
+        // The cursor of the album list contains everything that is shown
+        Album album = Album.getAlbumFromListCursor(cursor);
+
         // Get the title of the current album and set this text to the titleTV
         TextView titleTV = view.findViewById(R.id.audio_storage_item_title);
         titleTV.setSelected(true);
-        String title = cursor.getString(cursor.getColumnIndex(BookContract.AlbumEntry.COLUMN_TITLE));
-        titleTV.setText(title);
+        titleTV.setText(album.getTitle());
 
         // Get the progress of this album and update the view
         TextView progressTV = view.findViewById(R.id.album_info_time_album);
-        int id = cursor.getInt(cursor.getColumnIndex(BookContract.AlbumEntry._ID));
-        int[] times = DBAccessUtils.getAlbumTimes(context, id);
-        String timeStr = Utils.getTimeString(context, times[0], times[1]);
+        int completedTime = cursor.getInt(cursor.getColumnIndex(BookContract.AlbumEntry.COLUMN_COMPLETED_TIME));
+        int totalTime = cursor.getInt(cursor.getColumnIndex(BookContract.AlbumEntry.COLUMN_TOTAL_TIME));
+        String timeStr = Utils.getTimeString(context, completedTime, totalTime);
         progressTV.setText(timeStr);
 
         // Get the path of the thumbnail of the current album and set the src of the image view
         ImageView thumbnailIV = view.findViewById(R.id.audio_storage_item_thumbnail);
 
-        int albumId = cursor.getInt(cursor.getColumnIndex(BookContract.AlbumEntry._ID));
-        Album album = Album.getAlbumByID(mContext, albumId);
-        if (isCurrentItemActive(albumId)) {
+        if (album.getID() == mActiveAlbumId) {
             boolean darkTheme = mPrefs.getBoolean(mContext.getString(R.string.settings_dark_key), Boolean.getBoolean(mContext.getString(R.string.settings_dark_default)));
             if (darkTheme) {
                 thumbnailIV.setBackgroundResource(R.drawable.ic_unchecked_dark_theme);
@@ -93,8 +110,12 @@ public class AlbumCursorAdapter extends CursorAdapter {
             thumbnailIV.setImageResource(R.drawable.ic_playing);
         } else {
             thumbnailIV.setBackground(null);
-            assert album != null;
             String path = album.getCoverPath();
+            boolean coverFromMetadata = mPrefs.getBoolean(mContext.getString(R.string.settings_cover_from_metadata_key), Boolean.getBoolean(mContext.getString(R.string.settings_cover_from_metadata_default)));
+            if (coverFromMetadata && (path == null || !new File(path).exists())) {
+                // Fall back to the thumbnail of the cover embedded in the audio files
+                path = CoverThumbnails.getPath(mContext, album, CoverThumbnails.SIZE_LIST);
+            }
             int reqSize = mContext.getResources().getDimensionPixelSize(R.dimen.album_item_height);
             if (path != null) {
                 if (new File(path).exists()) {
@@ -116,8 +137,8 @@ public class AlbumCursorAdapter extends CursorAdapter {
 
         // Show the deletable image if the file does not exist anymore
         ImageView deletableIV = view.findViewById(R.id.album_item_deletable_img);
-        assert album != null;
-        if (!(new File(album.getPath())).exists()) {
+        String albumPath = album.getPath();
+        if (albumPath == null || !(new File(albumPath)).exists()) {
             deletableIV.setVisibility(View.VISIBLE);
         } else {
             deletableIV.setVisibility(View.GONE);
@@ -147,9 +168,10 @@ public class AlbumCursorAdapter extends CursorAdapter {
     }
 
     /*
-     * Check if the service is running for an audio file from the current album
+     * Get the album of the audio file the service is currently playing, -1 if the service is not
+     * running
      */
-    private boolean isCurrentItemActive(int albumId) {
+    private long getActiveAlbumId() {
         boolean serviceStarted = Utils.isMediaPlayerServiceRunning(mContext);
         if (serviceStarted) {
             StorageUtil storage = new StorageUtil(mContext.getApplicationContext());
@@ -162,15 +184,13 @@ public class AlbumCursorAdapter extends CursorAdapter {
                 try {
                     activeAudio = AudioFile.getAudioFileById(mContext, activeAudioId);
                 } catch (SQLException e) {
-                    return false;
+                    return -1;
                 }
-                long playingAlbumId = 0;
                 if (activeAudio != null) {
-                    playingAlbumId = activeAudio.getAlbumId();
+                    return activeAudio.getAlbumId();
                 }
-                return playingAlbumId == albumId;
             }
         }
-        return false;
+        return -1;
     }
 }
@@ -4,7 +4,6 @@ package my.android.audiobook.adapters;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.media.MediaMetadataRetriever;
 import android.preference.PreferenceManager;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -14,7 +13,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import my.android.audiobook.R;
-import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.ProgressStore;
+import my.android.audiobook.models.Album;
 import my.android.audiobook.models.AudioFile;
 import my.android.audiobook.utils.StorageUtil;
 import my.android.audiobook.utils.Utils;
@@ -29,14 +29,24 @@ import java.util.ArrayList;
 public class AudioFileCursorAdapter extends CursorAdapter {
 
     private Context mContext;
-    private MediaMetadataRetriever mMetadataRetriever;
     private SharedPreferences mPrefs;
+    private Album mAlbum;
+    private ProgressStore mProgressStore;
+    // The audio file that is currently played, determined once per cursor instead of per row
+    private long mActiveAudioId = -1;
 
-    public AudioFileCursorAdapter(Context context, Cursor c) {
+    public AudioFileCursorAdapter(Context context, Cursor c, Album album) {
         super(context, c, 0);
         mContext = context;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
-        mMetadataRetriever = new MediaMetadataRetriever();
+        mAlbum = album;
+        mProgressStore = ProgressStore.getInstance(context);
+    }
+
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        mActiveAudioId = getActiveAudioId();
+        return super.swapCursor(newCursor);
     }
 
     @Override
@@ -46,24 +56,14 @@ public class AudioFileCursorAdapter extends CursorAdapter {
 
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
-        // Get the path to the audio file
-        long audioID = cursor.getLong(cursor.getColumnIndex(BookContract.AudioEntry._ID));
-        AudioFile audioFile = AudioFile.getAudioFileById(mContext, audioID);
+        // The cursor contains all columns of the audio file, and all rows belong to the album
+        AudioFile audioFile = AudioFile.getAudioFileFromPositionedCursor(cursor, mAlbum, mProgressStore);
 
-        // Get the title of the current audio file and set this text to the titleTV
+        // Get the title of the current audio file and set this text to the titleTV. The metadata
+        // title has been stored during the synchronization, the file name is used without it.
         TextView titleTV = view.findViewById(R.id.audio_file_item_title);
-        String title = "";
         boolean titleFromMetadata = mPrefs.getBoolean(mContext.getString(R.string.settings_title_from_metadata_key), Boolean.getBoolean(mContext.getString(R.string.settings_title_from_metadata_default)));
-        if (titleFromMetadata && audioFile != null && new File(audioFile.getPath()).exists()) {
-            mMetadataRetriever.setDataSource(audioFile.getPath());
-            title = mMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-        }
-        if (title == null || title.isEmpty()) {
-            // Also use the file name if the audio file has no metadata title
-            assert audioFile != null;
-            title = audioFile.getTitle();
-        }
-        titleTV.setText(title);
+        titleTV.setText(audioFile.getDisplayTitle(titleFromMetadata));
 
         // Get the completed time and full time of the current audio file and set this text to the durationTV
         TextView durationTV = view.findViewById(R.id.audio_file_item_duration);
@@ -91,7 +91,7 @@ public class AudioFileCursorAdapter extends CursorAdapter {
         } else {
             thumbnailIV.setBackgroundResource(R.drawable.ic_unchecked);
         }
-        if (isCurrentItemActive(audioID)) {
+        if (audioFile.getID() == mActiveAudioId) {
             thumbnailIV.setImageResource(R.drawable.ic_playing);
         } else if (audioFile.getCompletedTime() >= audioFile.getTime() && audioFile.getTime() != 0) {
             thumbnailIV.setImageResource(R.drawable.ic_checked);
@@ -111,9 +111,9 @@ public class AudioFileCursorAdapter extends CursorAdapter {
     }
 
     /*
-     * Check if the service is running for the current audio file
+     * Get the ID of the audio file the service is running for, -1 if the service is not running
      */
-    private boolean isCurrentItemActive(long audioId) {
+    private long getActiveAudioId() {
         boolean serviceStarted = Utils.isMediaPlayerServiceRunning(mContext);
         if (serviceStarted) {
             StorageUtil storage = new StorageUtil(mContext.getApplicationContext());
@@ -121,10 +121,9 @@ public class AudioFileCursorAdapter extends CursorAdapter {
             int audioIndex = storage.loadAudioIndex();
             if (audioIndex < audioIdList.size() && audioIndex != -1) {
                 // Index is in a valid range
-                long activeAudioId = audioIdList.get(audioIndex);
-                return activeAudioId == audioId;
+                return audioIdList.get(audioIndex);
             }
         }
-        return false;
+        return -1;
     }
 }
@@ -12,13 +12,14 @@ import my.android.audiobook.BuildConfig;
 
 public class BookContract {
     // Content constants
-    static final String CONTENT_AUTHORITY = BuildConfig.APPLICATION_ID;
+    public static final String CONTENT_AUTHORITY = BuildConfig.APPLICATION_ID;
     private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     static final String PATH_AUDIO_FILES = "audio";
     static final String PATH_AUDIO_FILES_DISTINCT = "audio_distinct";
 
     static final String PATH_ALBUM = "album";
     static final String PATH_ALBUM_DISTINCT = "album_distinct";
+    static final String PATH_ALBUM_LIST = "album_list";
 
     static final String PATH_BOOKMARK = "bookmark";
     static final String PATH_BOOKMARK_DISTINCT = "bookmark_distinct";
@@ -48,12 +49,28 @@ public class BookContract {
         static final String COLUMN_PATH = "path";
         public static final String COLUMN_TIME = "time";
         public static final String COLUMN_COMPLETED_TIME = "completed_time";
+        // Name of the AudioFormat detected during the synchronization
+        public static final String COLUMN_FORMAT = "format";
+        // Size and checksum of the file, recognizes the audio file after it was renamed
+        public static final String COLUMN_FINGERPRINT = "fingerprint";
+        // Tags read during the synchronization, so they don't have to be extracted for display
+        public static final String COLUMN_TAGS_READ = "tags_read";
+        public static final String COLUMN_TAG_TITLE = "tag_title";
+        public static final String COLUMN_TAG_ARTIST = "tag_artist";
+        public static final String COLUMN_TAG_ALBUM = "tag_album";
+        public static final String COLUMN_TRACK_NUMBER = "track_number";
+        public static final String COLUMN_DISC_NUMBER = "disc_number";
+        public static final String COLUMN_NARRATOR = "narrator";
+        // Natural sort key of the title, set by the provider whenever the title is written
+        public static final String COLUMN_SORT_KEY = "sort_key";
     }
 
     // Class for the Album Table
     public static abstract class AlbumEntry implements BaseColumns {
         // Content URI for the album table
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ALBUM);
+        // Content URI for the albums joined with their directories
+        public static final Uri CONTENT_LIST_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_ALBUM_LIST);
 
         // The MIME type of the CONTENT_URI for a list of albums.
         static final String CONTENT_LIST_TYPE =
@@ -71,6 +88,25 @@ public class BookContract {
         public static final String COLUMN_COVER_PATH = "cover_path";
         public static final String COLUMN_DIRECTORY = "directory";
         public static final String COLUMN_LAST_PLAYED = "last_played";
+        // Manifest of the album directory at the time of the last synchronization
+        public static final String COLUMN_DIR_MTIME = "dir_mtime";
+        public static final String COLUMN_ENTRY_COUNT = "entry_count";
+        // Ranked cover candidates and the directory modification time they were determined at
+        public static final String COLUMN_COVER_CANDIDATES = "cover_candidates";
+        public static final String COLUMN_COVER_MTIME = "cover_mtime";
+        // Combined fingerprint of the audio files, recognizes the album after it was moved
+        public static final String COLUMN_FINGERPRINT = "fingerprint";
+        // Fingerprint of the audio file whose embedded cover is stored as thumbnails
+        public static final String COLUMN_EMBEDDED_COVER = "embedded_cover";
+        // Sums over the audio files of the album, maintained by triggers on the audio file table
+        public static final String COLUMN_TOTAL_TIME = "total_time";
+        public static final String COLUMN_COMPLETED_TIME = "completed_time";
+        public static final String COLUMN_TRACK_COUNT = "track_count";
+        // Natural sort key of the title, set by the provider whenever the title is written
+        public static final String COLUMN_SORT_KEY = "sort_key";
+        // Columns of the directory of the album, only available from CONTENT_LIST_URI
+        public static final String COLUMN_DIRECTORY_PATH = "directory_path";
+        public static final String COLUMN_DIRECTORY_TYPE = "directory_type";
     }
 
     // Class for the Bookmark Table
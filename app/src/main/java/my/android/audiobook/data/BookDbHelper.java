@@ -6,10 +6,11 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 
 import my.android.audiobook.R;
-import my.android.audiobook.models.Album;
 import my.android.audiobook.models.Directory;
 
 import java.util.ArrayList;
@@ -22,7 +23,43 @@ public class BookDbHelper extends SQLiteOpenHelper {
     public static final String DATABASE_NAME = "audio_book.db";
 
     // Database version. Must be incremented when the database schema is changed.
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 13;
+
+    // Indexes on the columns that link the tables. Every lookup of the albums of a directory,
+    // the audio files of an album or the bookmarks of an audio file uses one of them. The album
+    // list and the audio files of an album are read in the order of the sort key indexes.
+    private static final String[] SQL_CREATE_INDEXES = {
+            "CREATE INDEX IF NOT EXISTS audio_files_album_sort_key_index ON " + BookContract.AudioEntry.TABLE_NAME
+                    + " (" + BookContract.AudioEntry.COLUMN_ALBUM + ", " + BookContract.AudioEntry.COLUMN_SORT_KEY + ")",
+            "CREATE INDEX IF NOT EXISTS albums_directory_sort_key_index ON " + BookContract.AlbumEntry.TABLE_NAME
+                    + " (" + BookContract.AlbumEntry.COLUMN_DIRECTORY + ", " + BookContract.AlbumEntry.COLUMN_SORT_KEY + ")",
+            "CREATE INDEX IF NOT EXISTS albums_sort_key_index ON " + BookContract.AlbumEntry.TABLE_NAME
+                    + " (" + BookContract.AlbumEntry.COLUMN_SORT_KEY + ")",
+            "CREATE INDEX IF NOT EXISTS bookmarks_audio_file_index ON " + BookContract.BookmarkEntry.TABLE_NAME
+                    + " (" + BookContract.BookmarkEntry.COLUMN_AUDIO_FILE + ", " + BookContract.BookmarkEntry.COLUMN_POSITION + ")"};
+
+    // Statements that add the times of an audio file to the sums of its album or subtract them
+    private static final String SQL_ADD_TO_ALBUM = getUpdateAlbumSumsSql("+", "NEW");
+    private static final String SQL_SUBTRACT_FROM_ALBUM = getUpdateAlbumSumsSql("-", "OLD");
+
+    // Triggers that keep the sums of the albums up to date. The album list shows the progress of
+    // every album without reading the audio files.
+    private static final String[] SQL_CREATE_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS audio_files_insert_trigger AFTER INSERT ON " + BookContract.AudioEntry.TABLE_NAME
+                    + " BEGIN " + SQL_ADD_TO_ALBUM + " END",
+            "CREATE TRIGGER IF NOT EXISTS audio_files_delete_trigger AFTER DELETE ON " + BookContract.AudioEntry.TABLE_NAME
+                    + " BEGIN " + SQL_SUBTRACT_FROM_ALBUM + " END",
+            "CREATE TRIGGER IF NOT EXISTS audio_files_update_trigger AFTER UPDATE OF "
+                    + BookContract.AudioEntry.COLUMN_TIME + ", " + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + ", " + BookContract.AudioEntry.COLUMN_ALBUM
+                    + " ON " + BookContract.AudioEntry.TABLE_NAME
+                    + " BEGIN " + SQL_SUBTRACT_FROM_ALBUM + " " + SQL_ADD_TO_ALBUM + " END"};
+
+    // Number of pages in the write-ahead log after which a commit copies them back to the
+    // database. Android uses 100 pages, which makes a large synchronization checkpoint after
+    // almost every batch.
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+    // Size in bytes the write-ahead log is truncated to after a checkpoint
+    private static final long WAL_SIZE_LIMIT = 1024 * 1024;
 
     private static BookDbHelper mInstance = null;
     private Context mContext;
@@ -30,33 +67,21 @@ public class BookDbHelper extends SQLiteOpenHelper {
     public BookDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
         mContext = context;
+        // Queries get their own connections, such that they are not blocked while the
+        // synchronization writes to the database
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         // Create a String that contains the SQL statement to create the audio file table
-        String SQL_CREATE_AUDIO_FILE_TABLE = "CREATE TABLE " + BookContract.AudioEntry.TABLE_NAME + " ("
-                + BookContract.AudioEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + BookContract.AudioEntry.COLUMN_TITLE + " TEXT NOT NULL, "
-                + BookContract.AudioEntry.COLUMN_ALBUM + " TEXT NOT NULL, "
-                + BookContract.AudioEntry.COLUMN_PATH + " TEXT, "
-                + BookContract.AudioEntry.COLUMN_TIME + " INTEGER DEFAULT 0, "
-                + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + " INTEGER DEFAULT 0);";
+        String SQL_CREATE_AUDIO_FILE_TABLE = getCreateAudioFileTableSql(BookContract.AudioEntry.TABLE_NAME);
 
         // Create a String that contains the SQL statement to create the album table
-        String SQL_CREATE_ALBUM_TABLE = "CREATE TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ("
-                + BookContract.AlbumEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + BookContract.AlbumEntry.COLUMN_TITLE + " TEXT NOT NULL, "
-                + BookContract.AlbumEntry.COLUMN_DIRECTORY + " INTEGER, "
-                + BookContract.AlbumEntry.COLUMN_LAST_PLAYED + " INTEGER, "
-                + BookContract.AlbumEntry.COLUMN_COVER_PATH + " TEXT);";
+        String SQL_CREATE_ALBUM_TABLE = getCreateAlbumTableSql(BookContract.AlbumEntry.TABLE_NAME);
 
         // Create a String that contains the SQL statement to create the bookmark table
-        String SQL_CREATE_BOOKMARK_TABLE = "CREATE TABLE " + BookContract.BookmarkEntry.TABLE_NAME + " ("
-                + BookContract.BookmarkEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + BookContract.BookmarkEntry.COLUMN_TITLE + " TEXT NOT NULL, "
-                + BookContract.BookmarkEntry.COLUMN_POSITION + " INTEGER, "
-                + BookContract.BookmarkEntry.COLUMN_AUDIO_FILE + " INTEGER);";
+        String SQL_CREATE_BOOKMARK_TABLE = getCreateBookmarkTableSql(BookContract.BookmarkEntry.TABLE_NAME);
 
         // Create a String that contains the SQL statement to create the directory table
         String SQL_CREATE_DIRECTORY_TABLE = "CREATE TABLE IF NOT EXISTS " + BookContract.DirectoryEntry.TABLE_NAME + " ("
@@ -64,10 +89,16 @@ public class BookDbHelper extends SQLiteOpenHelper {
                 + BookContract.DirectoryEntry.COLUMN_PATH + " TEXT NOT NULL, "
                 + BookContract.DirectoryEntry.COLUMN_TYPE + " INTEGER);";
 
-        db.execSQL(SQL_CREATE_AUDIO_FILE_TABLE);
+        db.execSQL(SQL_CREATE_DIRECTORY_TABLE);
         db.execSQL(SQL_CREATE_ALBUM_TABLE);
+        db.execSQL(SQL_CREATE_AUDIO_FILE_TABLE);
         db.execSQL(SQL_CREATE_BOOKMARK_TABLE);
-        db.execSQL(SQL_CREATE_DIRECTORY_TABLE);
+        for (String index : SQL_CREATE_INDEXES) {
+            db.execSQL(index);
+        }
+        for (String trigger : SQL_CREATE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
     }
 
     @Override
@@ -107,52 +138,283 @@ public class BookDbHelper extends SQLiteOpenHelper {
             String SQL_ADD_LAST_PLAYED_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_LAST_PLAYED + " INTEGER";
             db.execSQL(SQL_ADD_LAST_PLAYED_COLUMN);
 
-            // Populate column_directory in album table
-            ArrayList<Album> albums = getAllAlbums(db, currentDirectory);
-            for (Album album : albums) {
-                ContentValues albumValues = album.getContentValues();
-                String selection = BookContract.AlbumEntry._ID + "=?";
-                String[] selectionArgs = new String[]{String.valueOf(album.getID())};
-                db.update(BookContract.AlbumEntry.TABLE_NAME, albumValues, selection, selectionArgs);
+            // Populate column_directory in album table. All existing albums belong to the
+            // directory from the preferences. Only touch the directory column here, as columns
+            // added by later versions do not exist yet.
+            ContentValues albumValues = new ContentValues();
+            albumValues.put(BookContract.AlbumEntry.COLUMN_DIRECTORY, currentDirectory.getID());
+            db.update(BookContract.AlbumEntry.TABLE_NAME, albumValues, null, null);
+        }
+        if (i < 4) {
+            // Add the album directory manifest columns. Existing albums get an empty manifest,
+            // so they are fully synchronized once before they can be skipped.
+            String SQL_ADD_DIR_MTIME_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_DIR_MTIME + " INTEGER DEFAULT 0";
+            db.execSQL(SQL_ADD_DIR_MTIME_COLUMN);
+            String SQL_ADD_ENTRY_COUNT_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_ENTRY_COUNT + " INTEGER DEFAULT -1";
+            db.execSQL(SQL_ADD_ENTRY_COUNT_COLUMN);
+        }
+        if (i < 5) {
+            // Add the format column to the audio file table. The format of existing audio files
+            // stays unknown until it is determined from the file name again.
+            String SQL_ADD_FORMAT_COLUMN = "ALTER TABLE " + BookContract.AudioEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AudioEntry.COLUMN_FORMAT + " TEXT";
+            db.execSQL(SQL_ADD_FORMAT_COLUMN);
+        }
+        if (i < 6) {
+            // Add the cover index columns. The index of existing albums is built during the next
+            // synchronization of their directory.
+            String SQL_ADD_COVER_CANDIDATES_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES + " TEXT";
+            db.execSQL(SQL_ADD_COVER_CANDIDATES_COLUMN);
+            String SQL_ADD_COVER_MTIME_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_COVER_MTIME + " INTEGER DEFAULT 0";
+            db.execSQL(SQL_ADD_COVER_MTIME_COLUMN);
+        }
+        if (i < 7) {
+            // Add the fingerprint columns and clear the album manifests, such that all albums are
+            // fingerprinted during the next synchronization
+            String SQL_ADD_AUDIO_FINGERPRINT_COLUMN = "ALTER TABLE " + BookContract.AudioEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AudioEntry.COLUMN_FINGERPRINT + " TEXT";
+            db.execSQL(SQL_ADD_AUDIO_FINGERPRINT_COLUMN);
+            String SQL_ADD_ALBUM_FINGERPRINT_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_FINGERPRINT + " TEXT";
+            db.execSQL(SQL_ADD_ALBUM_FINGERPRINT_COLUMN);
+            ContentValues albumValues = new ContentValues();
+            albumValues.put(BookContract.AlbumEntry.COLUMN_DIR_MTIME, 0);
+            albumValues.put(BookContract.AlbumEntry.COLUMN_ENTRY_COUNT, -1);
+            db.update(BookContract.AlbumEntry.TABLE_NAME, albumValues, null, null);
+        }
+        if (i < 8) {
+            // Add the tag columns. The tags of existing audio files are read during the next
+            // synchronization if the title is taken from the metadata.
+            String[] SQL_ADD_TAG_COLUMNS = {
+                    BookContract.AudioEntry.COLUMN_TAGS_READ + " INTEGER DEFAULT 0",
+                    BookContract.AudioEntry.COLUMN_TAG_TITLE + " TEXT",
+                    BookContract.AudioEntry.COLUMN_TAG_ARTIST + " TEXT",
+                    BookContract.AudioEntry.COLUMN_TAG_ALBUM + " TEXT",
+                    BookContract.AudioEntry.COLUMN_TRACK_NUMBER + " INTEGER DEFAULT 0",
+                    BookContract.AudioEntry.COLUMN_DISC_NUMBER + " INTEGER DEFAULT 0",
+                    BookContract.AudioEntry.COLUMN_NARRATOR + " TEXT"};
+            for (String column : SQL_ADD_TAG_COLUMNS) {
+                db.execSQL("ALTER TABLE " + BookContract.AudioEntry.TABLE_NAME + " ADD COLUMN " + column);
+            }
+        }
+        if (i < 9) {
+            // Add the embedded cover column. The covers of existing albums are extracted during
+            // the next synchronization if the cover is taken from the metadata.
+            String SQL_ADD_EMBEDDED_COVER_COLUMN = "ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER + " TEXT";
+            db.execSQL(SQL_ADD_EMBEDDED_COVER_COLUMN);
+        }
+        if (i < 11) {
+            // Rebuild the tables with foreign keys, such that deleting a directory, an album or an
+            // audio file also deletes the rows that belong to it. Rows whose parent was already
+            // deleted would violate the foreign keys and are dropped. The parents are rebuilt
+            // first, as dropping a table deletes its rows from the tables that reference it.
+            // The rebuild also changes the album column of the audio file table from text to
+            // integer, which was used up to version 9.
+            String tempTable = BookContract.AlbumEntry.TABLE_NAME + "_new";
+            rebuildTable(db, BookContract.AlbumEntry.TABLE_NAME, tempTable, getCreateAlbumTableSql(tempTable),
+                    BookContract.AlbumEntry.COLUMN_DIRECTORY + " IS NULL OR " + BookContract.AlbumEntry.COLUMN_DIRECTORY
+                            + " IN (SELECT " + BookContract.DirectoryEntry._ID + " FROM " + BookContract.DirectoryEntry.TABLE_NAME + ")");
+            tempTable = BookContract.AudioEntry.TABLE_NAME + "_new";
+            rebuildTable(db, BookContract.AudioEntry.TABLE_NAME, tempTable, getCreateAudioFileTableSql(tempTable),
+                    BookContract.AudioEntry.COLUMN_ALBUM
+                            + " IN (SELECT " + BookContract.AlbumEntry._ID + " FROM " + BookContract.AlbumEntry.TABLE_NAME + ")");
+            tempTable = BookContract.BookmarkEntry.TABLE_NAME + "_new";
+            rebuildTable(db, BookContract.BookmarkEntry.TABLE_NAME, tempTable, getCreateBookmarkTableSql(tempTable),
+                    BookContract.BookmarkEntry.COLUMN_AUDIO_FILE
+                            + " IN (SELECT " + BookContract.AudioEntry._ID + " FROM " + BookContract.AudioEntry.TABLE_NAME + ")");
+
+            // The indexes were dropped with the old tables
+            for (String index : SQL_CREATE_INDEXES) {
+                db.execSQL(index);
             }
         }
-    }
+        if (i < 12) {
+            // Add the sums of the audio files to the album table. The album table rebuilt above
+            // already contains the columns.
+            if (i >= 11) {
+                String[] SQL_ADD_SUM_COLUMNS = {
+                        BookContract.AlbumEntry.COLUMN_TOTAL_TIME + " INTEGER DEFAULT 0",
+                        BookContract.AlbumEntry.COLUMN_COMPLETED_TIME + " INTEGER DEFAULT 0",
+                        BookContract.AlbumEntry.COLUMN_TRACK_COUNT + " INTEGER DEFAULT 0"};
+                for (String column : SQL_ADD_SUM_COLUMNS) {
+                    db.execSQL("ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + column);
+                }
+            }
 
-    static BookDbHelper getInstance(Context context) {
-        if (mInstance == null) {
-            mInstance = new BookDbHelper(context.getApplicationContext());
+            // Compute the sums of the existing albums once, the triggers keep them up to date
+            String audioFilesOfAlbum = " FROM " + BookContract.AudioEntry.TABLE_NAME + " WHERE " + BookContract.AudioEntry.COLUMN_ALBUM
+                    + " = " + BookContract.AlbumEntry.TABLE_NAME + "." + BookContract.AlbumEntry._ID + ")";
+            db.execSQL("UPDATE " + BookContract.AlbumEntry.TABLE_NAME + " SET "
+                    + BookContract.AlbumEntry.COLUMN_TOTAL_TIME + " = (SELECT IFNULL(SUM(" + BookContract.AudioEntry.COLUMN_TIME + "), 0)" + audioFilesOfAlbum + ", "
+                    + BookContract.AlbumEntry.COLUMN_COMPLETED_TIME + " = (SELECT IFNULL(SUM(" + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + "), 0)" + audioFilesOfAlbum + ", "
+                    + BookContract.AlbumEntry.COLUMN_TRACK_COUNT + " = (SELECT COUNT(*)" + audioFilesOfAlbum);
+            for (String trigger : SQL_CREATE_TRIGGERS) {
+                db.execSQL(trigger);
+            }
+        }
+        if (i < 13) {
+            // Add the sort key columns. The tables rebuilt above already contain them.
+            if (i >= 11) {
+                db.execSQL("ALTER TABLE " + BookContract.AlbumEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AlbumEntry.COLUMN_SORT_KEY + " TEXT");
+                db.execSQL("ALTER TABLE " + BookContract.AudioEntry.TABLE_NAME + " ADD COLUMN " + BookContract.AudioEntry.COLUMN_SORT_KEY + " TEXT");
+            }
+            updateSortKeys(db, BookContract.AlbumEntry.TABLE_NAME);
+            updateSortKeys(db, BookContract.AudioEntry.TABLE_NAME);
+
+            // The indexes on the album and directory columns are replaced by the ones that
+            // include the sort key
+            db.execSQL("DROP INDEX IF EXISTS audio_files_album_index");
+            db.execSQL("DROP INDEX IF EXISTS albums_directory_index");
+            for (String index : SQL_CREATE_INDEXES) {
+                db.execSQL(index);
+            }
         }
-        return mInstance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Delete the albums, audio files and bookmarks that belong to a deleted row
+        db.setForeignKeyConstraintsEnabled(true);
+        setPragma(db, "wal_autocheckpoint", WAL_AUTOCHECKPOINT_PAGES);
+        setPragma(db, "journal_size_limit", WAL_SIZE_LIMIT);
     }
 
     /*
-     * Get all albums from the database
+     * Set a pragma of the connection. Pragmas that return their new value cannot be executed
+     * with execSQL.
      */
-    private ArrayList<Album> getAllAlbums(SQLiteDatabase db, Directory directory) {
-        ArrayList<Album> albums = new ArrayList<>();
-        Cursor c = db.query(BookContract.AlbumEntry.TABLE_NAME, Album.getColumns(), null, null, null, null, null);
+    private static void setPragma(SQLiteDatabase db, String pragma, long value) {
+        Cursor c = db.rawQuery("PRAGMA " + pragma + " = " + value, null);
+        c.moveToFirst();
+        c.close();
+    }
 
-        // Bail early if the cursor is null
-        if (c == null) {
-            return albums;
-        } else if (c.getCount() < 1) {
-            c.close();
-            return albums;
+    /*
+     * Create the table again with the given statement under a temporary name and copy the rows
+     * that match the condition. The sequence of the ids is kept, such that ids of deleted rows
+     * are not reused. The values are converted to the types of the new columns, columns that are
+     * new get their default value.
+     */
+    private static void rebuildTable(SQLiteDatabase db, String tableName, String tempTable, String createSql, String condition) {
+        db.execSQL(createSql);
+
+        ArrayList<String> columns = getColumnNames(db, tempTable);
+        columns.retainAll(getColumnNames(db, tableName));
+        String columnList = TextUtils.join(", ", columns);
+
+        db.execSQL("INSERT INTO " + tempTable + " (" + columnList + ") SELECT " + columnList
+                + " FROM " + tableName + " WHERE " + condition);
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + tempTable + "'");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + tempTable + "', seq"
+                + " FROM sqlite_sequence WHERE name = '" + tableName + "'");
+        db.execSQL("DROP TABLE " + tableName);
+        db.execSQL("ALTER TABLE " + tempTable + " RENAME TO " + tableName);
+    }
+
+    /*
+     * Compute the sort keys of all rows of the album or audio file table from their titles. Both
+     * tables name the columns the same.
+     */
+    private static void updateSortKeys(SQLiteDatabase db, String tableName) {
+        SQLiteStatement statement = db.compileStatement("UPDATE " + tableName + " SET " + BookContract.AlbumEntry.COLUMN_SORT_KEY
+                + " = ? WHERE " + BookContract.AlbumEntry._ID + " = ?");
+        String[] columns = {BookContract.AlbumEntry._ID, BookContract.AlbumEntry.COLUMN_TITLE};
+        Cursor c = db.query(tableName, columns, null, null, null, null, null);
+        while (c.moveToNext()) {
+            statement.bindString(1, SortKey.of(c.getString(1)));
+            statement.bindLong(2, c.getLong(0));
+            statement.executeUpdateDelete();
         }
+        c.close();
+        statement.close();
+    }
 
+    private static ArrayList<String> getColumnNames(SQLiteDatabase db, String tableName) {
+        ArrayList<String> columns = new ArrayList<>();
+        Cursor c = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        int nameIndex = c.getColumnIndex("name");
         while (c.moveToNext()) {
-            long id = c.getLong(c.getColumnIndex(BookContract.AlbumEntry._ID));
-            String title = c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_TITLE));
-            String coverPath = c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_COVER_PATH));
-            long lastPlayed = -1;
-            if (!c.isNull(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_LAST_PLAYED))) {
-                lastPlayed = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_LAST_PLAYED));
-            }
-            Album album = new Album(id, title, directory, coverPath, lastPlayed);
-            albums.add(album);
+            columns.add(c.getString(nameIndex));
         }
         c.close();
+        return columns;
+    }
+
+    /*
+     * Get the trigger statement that adds or subtracts the times of the NEW or OLD audio file
+     * to or from the sums of its album
+     */
+    private static String getUpdateAlbumSumsSql(String operator, String row) {
+        return "UPDATE " + BookContract.AlbumEntry.TABLE_NAME + " SET "
+                + BookContract.AlbumEntry.COLUMN_TOTAL_TIME + " = " + BookContract.AlbumEntry.COLUMN_TOTAL_TIME
+                + " " + operator + " IFNULL(" + row + "." + BookContract.AudioEntry.COLUMN_TIME + ", 0), "
+                + BookContract.AlbumEntry.COLUMN_COMPLETED_TIME + " = " + BookContract.AlbumEntry.COLUMN_COMPLETED_TIME
+                + " " + operator + " IFNULL(" + row + "." + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + ", 0), "
+                + BookContract.AlbumEntry.COLUMN_TRACK_COUNT + " = " + BookContract.AlbumEntry.COLUMN_TRACK_COUNT + " " + operator + " 1"
+                + " WHERE " + BookContract.AlbumEntry._ID + " = " + row + "." + BookContract.AudioEntry.COLUMN_ALBUM + ";";
+    }
 
-        return albums;
+    /*
+     * Get the SQL statement that creates the album table with the given name
+     */
+    private static String getCreateAlbumTableSql(String tableName) {
+        return "CREATE TABLE " + tableName + " ("
+                + BookContract.AlbumEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookContract.AlbumEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + BookContract.AlbumEntry.COLUMN_DIRECTORY + " INTEGER REFERENCES "
+                + BookContract.DirectoryEntry.TABLE_NAME + " (" + BookContract.DirectoryEntry._ID + ") ON DELETE CASCADE, "
+                + BookContract.AlbumEntry.COLUMN_LAST_PLAYED + " INTEGER, "
+                + BookContract.AlbumEntry.COLUMN_COVER_PATH + " TEXT, "
+                + BookContract.AlbumEntry.COLUMN_DIR_MTIME + " INTEGER DEFAULT 0, "
+                + BookContract.AlbumEntry.COLUMN_ENTRY_COUNT + " INTEGER DEFAULT -1, "
+                + BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES + " TEXT, "
+                + BookContract.AlbumEntry.COLUMN_COVER_MTIME + " INTEGER DEFAULT 0, "
+                + BookContract.AlbumEntry.COLUMN_FINGERPRINT + " TEXT, "
+                + BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER + " TEXT, "
+                + BookContract.AlbumEntry.COLUMN_TOTAL_TIME + " INTEGER DEFAULT 0, "
+                + BookContract.AlbumEntry.COLUMN_COMPLETED_TIME + " INTEGER DEFAULT 0, "
+                + BookContract.AlbumEntry.COLUMN_TRACK_COUNT + " INTEGER DEFAULT 0, "
+                + BookContract.AlbumEntry.COLUMN_SORT_KEY + " TEXT);";
+    }
+
+    /*
+     * Get the SQL statement that creates the audio file table with the given name
+     */
+    private static String getCreateAudioFileTableSql(String tableName) {
+        return "CREATE TABLE " + tableName + " ("
+                + BookContract.AudioEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookContract.AudioEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + BookContract.AudioEntry.COLUMN_ALBUM + " INTEGER NOT NULL REFERENCES "
+                + BookContract.AlbumEntry.TABLE_NAME + " (" + BookContract.AlbumEntry._ID + ") ON DELETE CASCADE, "
+                + BookContract.AudioEntry.COLUMN_PATH + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_TIME + " INTEGER DEFAULT 0, "
+                + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + " INTEGER DEFAULT 0, "
+                + BookContract.AudioEntry.COLUMN_FORMAT + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_FINGERPRINT + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_TAGS_READ + " INTEGER DEFAULT 0, "
+                + BookContract.AudioEntry.COLUMN_TAG_TITLE + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_TAG_ARTIST + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_TAG_ALBUM + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_TRACK_NUMBER + " INTEGER DEFAULT 0, "
+                + BookContract.AudioEntry.COLUMN_DISC_NUMBER + " INTEGER DEFAULT 0, "
+                + BookContract.AudioEntry.COLUMN_NARRATOR + " TEXT, "
+                + BookContract.AudioEntry.COLUMN_SORT_KEY + " TEXT);";
+    }
+
+    /*
+     * Get the SQL statement that creates the bookmark table with the given name
+     */
+    private static String getCreateBookmarkTableSql(String tableName) {
+        return "CREATE TABLE " + tableName + " ("
+                + BookContract.BookmarkEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookContract.BookmarkEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + BookContract.BookmarkEntry.COLUMN_POSITION + " INTEGER, "
+                + BookContract.BookmarkEntry.COLUMN_AUDIO_FILE + " INTEGER REFERENCES "
+                + BookContract.AudioEntry.TABLE_NAME + " (" + BookContract.AudioEntry._ID + ") ON DELETE CASCADE);";
+    }
+
+    static synchronized BookDbHelper getInstance(Context context) {
+        if (mInstance == null) {
+            mInstance = new BookDbHelper(context.getApplicationContext());
+        }
+        return mInstance;
     }
 }
@@ -1,8 +1,11 @@
 package my.android.audiobook.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -14,6 +17,12 @@ import android.util.Log;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Content Provider for audio_book app
@@ -34,6 +43,7 @@ public class BookProvider extends ContentProvider {
     private static final int ALBUM = 200;
     private static final int ALBUM_ID = 201;
     private static final int ALBUM_DISTINCT = 210;
+    private static final int ALBUM_LIST = 220;
 
     private static final int BOOKMARK = 300;
     private static final int BOOKMARK_ID = 301;
@@ -45,6 +55,28 @@ public class BookProvider extends ContentProvider {
 
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    // Tables and columns of the album list. The album columns are qualified, as the directory
+    // table has columns with the same names.
+    private static final String ALBUM_LIST_TABLES = BookContract.AlbumEntry.TABLE_NAME + " LEFT JOIN " + BookContract.DirectoryEntry.TABLE_NAME
+            + " ON " + BookContract.AlbumEntry.TABLE_NAME + "." + BookContract.AlbumEntry.COLUMN_DIRECTORY
+            + " = " + BookContract.DirectoryEntry.TABLE_NAME + "." + BookContract.DirectoryEntry._ID;
+    private static final HashMap<String, String> sAlbumListProjectionMap = new HashMap<>();
+
+    // Notifications collected while a batch is applied on the current thread. They are sent when
+    // the transaction of the batch is finished, each URI once.
+    private static final ThreadLocal<Set<Uri>> sPendingNotifications = new ThreadLocal<>();
+    // Number of rows of a table above which the table URI is notified instead of the single rows
+    private static final int MAX_ROW_NOTIFICATIONS = 20;
+
+    // Kinds of calls that are counted since the process was started. The counts are reported by
+    // the synchronization statistics.
+    public static final int CALL_QUERY = 0;
+    public static final int CALL_INSERT = 1;
+    public static final int CALL_UPDATE = 2;
+    public static final int CALL_DELETE = 3;
+    public static final int CALL_BATCH = 4;
+    private static final AtomicLongArray sCallCounts = new AtomicLongArray(5);
+
     static {
         // URIs for the audio files table
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_AUDIO_FILES, AUDIO);
@@ -54,6 +86,7 @@ public class BookProvider extends ContentProvider {
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_ALBUM, ALBUM);
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_ALBUM + "/#", ALBUM_ID);
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_ALBUM_DISTINCT, ALBUM_DISTINCT);
+        sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_ALBUM_LIST, ALBUM_LIST);
         // URIs for the bookmarks table
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKMARK, BOOKMARK);
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKMARK + "/#", BOOKMARK_ID);
@@ -64,22 +97,65 @@ public class BookProvider extends ContentProvider {
         sUriMatcher.addURI(BookContract.CONTENT_AUTHORITY, BookContract.PATH_DIRECTORY_DISTINCT, DIRECTORY_DISTINCT);
     }
 
+    static {
+        String[] albumColumns = {
+                BookContract.AlbumEntry._ID,
+                BookContract.AlbumEntry.COLUMN_TITLE,
+                BookContract.AlbumEntry.COLUMN_DIRECTORY,
+                BookContract.AlbumEntry.COLUMN_COVER_PATH,
+                BookContract.AlbumEntry.COLUMN_LAST_PLAYED,
+                BookContract.AlbumEntry.COLUMN_DIR_MTIME,
+                BookContract.AlbumEntry.COLUMN_ENTRY_COUNT,
+                BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES,
+                BookContract.AlbumEntry.COLUMN_COVER_MTIME,
+                BookContract.AlbumEntry.COLUMN_FINGERPRINT,
+                BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER,
+                BookContract.AlbumEntry.COLUMN_TOTAL_TIME,
+                BookContract.AlbumEntry.COLUMN_COMPLETED_TIME,
+                BookContract.AlbumEntry.COLUMN_TRACK_COUNT};
+        for (String column : albumColumns) {
+            sAlbumListProjectionMap.put(column, BookContract.AlbumEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        sAlbumListProjectionMap.put(BookContract.AlbumEntry.COLUMN_DIRECTORY_PATH,
+                BookContract.DirectoryEntry.TABLE_NAME + "." + BookContract.DirectoryEntry.COLUMN_PATH + " AS " + BookContract.AlbumEntry.COLUMN_DIRECTORY_PATH);
+        sAlbumListProjectionMap.put(BookContract.AlbumEntry.COLUMN_DIRECTORY_TYPE,
+                BookContract.DirectoryEntry.TABLE_NAME + "." + BookContract.DirectoryEntry.COLUMN_TYPE + " AS " + BookContract.AlbumEntry.COLUMN_DIRECTORY_TYPE);
+    }
+
+    /**
+     * Get the number of calls of the given kind since the process was started.
+     */
+    public static long getCallCount(int kind) {
+        return sCallCounts.get(kind);
+    }
+
     /**
      * Initialize the provider and the database helper object.
      */
     @Override
     public boolean onCreate() {
         // Create and initialize a BookDbHelper object to gain access to the audios database.
-        mDbHelper = BookDbHelper.getInstance(getContext());
+        mDbHelper = createDbHelper();
+        // Replay the positions that were saved but not written before the process died
+        ProgressStore.getInstance(getContext());
         return true;
     }
 
+    /**
+     * Get the helper of the library database. Instrumented tests create a provider of their own
+     * that uses a throwaway database instead.
+     */
+    protected BookDbHelper createDbHelper() {
+        return BookDbHelper.getInstance(getContext());
+    }
+
     /**
      * Perform the query for the given URI with given parameters.
      */
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        sCallCounts.incrementAndGet(CALL_QUERY);
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
         SQLiteQueryBuilder qb;
@@ -133,6 +209,16 @@ public class BookProvider extends ContentProvider {
                 qb.setTables(BookContract.DirectoryEntry.TABLE_NAME);
                 cursor = qb.query(database, projection, selection, selectionArgs, null, null, sortOrder);
                 break;
+            case ALBUM_LIST:
+                // Query the albums together with their directories, such that the album list
+                // does not have to look up the directory of every album
+                qb = new SQLiteQueryBuilder();
+                qb.setTables(ALBUM_LIST_TABLES);
+                qb.setProjectionMap(sAlbumListProjectionMap);
+                cursor = qb.query(database, projection, selection, selectionArgs, null, null, sortOrder);
+                // The list changes with the album table
+                cursor.setNotificationUri(getContext().getContentResolver(), BookContract.AlbumEntry.CONTENT_URI);
+                return cursor;
             case AUDIO_ID:
                 // Query a single row given by the ID in the URI
                 selection = BookContract.AudioEntry._ID + "=?";
@@ -193,6 +279,8 @@ public class BookProvider extends ContentProvider {
                 return BookContract.BookmarkEntry.CONTENT_LIST_TYPE;
             case DIRECTORY:
                 return BookContract.DirectoryEntry.CONTENT_LIST_TYPE;
+            case ALBUM_LIST:
+                return BookContract.AlbumEntry.CONTENT_LIST_TYPE;
             case AUDIO_ID:
                 return BookContract.AudioEntry.CONTENT_ITEM_TYPE;
             case ALBUM_ID:
@@ -212,6 +300,7 @@ public class BookProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+        sCallCounts.incrementAndGet(CALL_INSERT);
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case AUDIO:
@@ -241,6 +330,7 @@ public class BookProvider extends ContentProvider {
 
         // dirty hack since older tables where created with COLUMN_PATH not null
         values.put(BookContract.AudioEntry.COLUMN_PATH, "");
+        putSortKey(values);
 
         long id = db.insert(BookContract.AudioEntry.TABLE_NAME, null, values);
 
@@ -249,11 +339,16 @@ public class BookProvider extends ContentProvider {
             return null;
         }
 
-        // Notify all listeners that the data at the given URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners of the new row and of the album, whose sums have changed
+        Uri rowUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(rowUri);
+        Long albumId = values.getAsLong(BookContract.AudioEntry.COLUMN_ALBUM);
+        if (albumId != null) {
+            notifyChange(ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, albumId));
+        }
 
         // Return the new URI with the appended ID
-        return ContentUris.withAppendedId(uri, id);
+        return rowUri;
     }
 
     /**
@@ -264,6 +359,7 @@ public class BookProvider extends ContentProvider {
         if (!isValidAlbumEntry(values)) {
             throw new IllegalArgumentException("Sanity check failed: corrupted content values");
         }
+        putSortKey(values);
 
         // Get writable database
         SQLiteDatabase db = mDbHelper.getWritableDatabase();
@@ -275,11 +371,12 @@ public class BookProvider extends ContentProvider {
             return null;
         }
 
-        // Notify all listeners that the data at the given URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners of the new row
+        Uri rowUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(rowUri);
 
         // Return the new URI with the appended ID
-        return ContentUris.withAppendedId(uri, id);
+        return rowUri;
     }
 
     /**
@@ -301,11 +398,12 @@ public class BookProvider extends ContentProvider {
             return null;
         }
 
-        // Notify all listeners that the data at the given URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners of the new row
+        Uri rowUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(rowUri);
 
         // Return the new URI with the appended ID
-        return ContentUris.withAppendedId(uri, id);
+        return rowUri;
     }
 
     /**
@@ -327,123 +425,140 @@ public class BookProvider extends ContentProvider {
             return null;
         }
 
-        // Notify all listeners that the data at the given URI has changed
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners of the new row
+        Uri rowUri = ContentUris.withAppendedId(uri, id);
+        notifyChange(rowUri);
 
         // Return the new URI with the appended ID
-        return ContentUris.withAppendedId(uri, id);
+        return rowUri;
+    }
+
+    /**
+     * Insert all given ContentValues in a single transaction.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        sCallCounts.incrementAndGet(CALL_BATCH);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        boolean isOutermostBatch = beginBatch();
+        // Queries of other threads can still read the database during the transaction
+        db.beginTransactionNonExclusive();
+        try {
+            int insertCount = 0;
+            for (ContentValues value : values) {
+                if (insert(uri, value) != null) {
+                    insertCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+            return insertCount;
+        } finally {
+            db.endTransaction();
+            endBatch(isOutermostBatch);
+        }
     }
 
     /**
-     * Delete the data at the given selection and selection arguments.
+     * Apply all given operations in a single transaction. If one of the operations fails, none of
+     * them is applied.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        sCallCounts.incrementAndGet(CALL_BATCH);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        boolean isOutermostBatch = beginBatch();
+        db.beginTransactionNonExclusive();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+            endBatch(isOutermostBatch);
+        }
+    }
+
+    /**
+     * Delete the data at the given selection and selection arguments. The albums, audio files and
+     * bookmarks that belong to the deleted rows are deleted by the foreign keys within the same
+     * statement.
      */
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        sCallCounts.incrementAndGet(CALL_DELETE);
         // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
+        String table;
+        // Tables whose rows might be deleted along with the rows of the table
+        Uri[] dependentUris;
         final int match = sUriMatcher.match(uri);
-        ArrayList<Long> ids;
         switch (match) {
-            case DIRECTORY:
-                // Delete corresponding albums
-                ids = getAffectedIds(BookContract.DirectoryEntry.CONTENT_URI, selection, selectionArgs);
-                for (long id : ids) {
-                    String subSelection = BookContract.AlbumEntry.COLUMN_DIRECTORY + "=?";
-                    String[] subSelectionArgs = new String[]{String.valueOf(id)};
-                    delete(BookContract.AlbumEntry.CONTENT_URI, subSelection, subSelectionArgs);
-                }
-
-                // Delete all rows that match the selection and selection args
-                getContext().getContentResolver().notifyChange(uri, null);
-                return database.delete(BookContract.DirectoryEntry.TABLE_NAME, selection, selectionArgs);
-            case ALBUM:
-                // Delete corresponding audio files
-                ids = getAffectedIds(BookContract.AlbumEntry.CONTENT_URI, selection, selectionArgs);
-                for (long id : ids) {
-                    String subSelection = BookContract.AudioEntry.COLUMN_ALBUM + "=?";
-                    String[] subSelectionArgs = new String[]{String.valueOf(id)};
-                    delete(BookContract.AudioEntry.CONTENT_URI, subSelection, subSelectionArgs);
-                }
-
-                // Delete all rows that match the selection and selection args
-                getContext().getContentResolver().notifyChange(uri, null);
-                return database.delete(BookContract.AlbumEntry.TABLE_NAME, selection, selectionArgs);
-            case AUDIO:
-                // Delete corresponding bookmarks for each deleted audio file
-                ids = getAffectedIds(BookContract.AudioEntry.CONTENT_URI, selection, selectionArgs);
-                for (long id : ids) {
-                    String subSelection = BookContract.BookmarkEntry.COLUMN_AUDIO_FILE + "=?";
-                    String[] subSelectionArgs = new String[]{String.valueOf(id)};
-                    delete(BookContract.BookmarkEntry.CONTENT_URI, subSelection, subSelectionArgs);
-                }
-
-                // Delete all rows that match the selection and selection args
-                getContext().getContentResolver().notifyChange(uri, null);
-                return database.delete(BookContract.AudioEntry.TABLE_NAME, selection, selectionArgs);
-            case BOOKMARK:
-                // Delete all rows that match the selection and selection args
-                getContext().getContentResolver().notifyChange(uri, null);
-                return database.delete(BookContract.BookmarkEntry.TABLE_NAME, selection, selectionArgs);
             case DIRECTORY_ID:
                 // Delete a single row given by the ID in the URI
-                long directoryId = ContentUris.parseId(uri);
                 selection = BookContract.DirectoryEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(directoryId)};
-
-                // Delete corresponding albums
-                String selectionAlbum = BookContract.AlbumEntry.COLUMN_DIRECTORY + "=?";
-                delete(BookContract.AlbumEntry.CONTENT_URI, selectionAlbum, selectionArgs);
-
-                // Send notification about change
-                getContext().getContentResolver().notifyChange(uri, null);
-
-                getContext().getContentResolver().notifyChange(uri, null);
-                return database.delete(BookContract.DirectoryEntry.TABLE_NAME, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                // fall through
+            case DIRECTORY:
+                table = BookContract.DirectoryEntry.TABLE_NAME;
+                dependentUris = new Uri[]{BookContract.AlbumEntry.CONTENT_URI, BookContract.AudioEntry.CONTENT_URI, BookContract.BookmarkEntry.CONTENT_URI};
+                break;
             case ALBUM_ID:
-                // Delete a single row given by the ID in the URI
-                long albumId = ContentUris.parseId(uri);
                 selection = BookContract.AlbumEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(albumId)};
-
-                // Delete corresponding audio files
-                String selectionAudioFile = BookContract.AudioEntry.COLUMN_ALBUM + "=?";
-                delete(BookContract.AudioEntry.CONTENT_URI, selectionAudioFile, selectionArgs);
-
-                // Send notification about change
-                getContext().getContentResolver().notifyChange(uri, null);
-
-                return database.delete(BookContract.AlbumEntry.TABLE_NAME, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                // fall through
+            case ALBUM:
+                table = BookContract.AlbumEntry.TABLE_NAME;
+                dependentUris = new Uri[]{BookContract.AudioEntry.CONTENT_URI, BookContract.BookmarkEntry.CONTENT_URI};
+                break;
             case AUDIO_ID:
-                // Delete a single row given by the ID in the URI
-                long audioId = ContentUris.parseId(uri);
                 selection = BookContract.AudioEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(audioId)};
-
-                // Delete corresponding bookmarks
-                String selectionBookmark = BookContract.BookmarkEntry.COLUMN_AUDIO_FILE + "=?";
-                delete(BookContract.BookmarkEntry.CONTENT_URI, selectionBookmark, selectionArgs);
-
-                // Send notification about change
-                getContext().getContentResolver().notifyChange(uri, null);
-
-                return database.delete(BookContract.AudioEntry.TABLE_NAME, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                // fall through
+            case AUDIO:
+                table = BookContract.AudioEntry.TABLE_NAME;
+                dependentUris = new Uri[]{BookContract.BookmarkEntry.CONTENT_URI};
+                break;
             case BOOKMARK_ID:
-                // Delete a single row given by the ID in the URI
                 selection = BookContract.BookmarkEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-
-                // Send notification about change
-                getContext().getContentResolver().notifyChange(uri, null);
-
-                return database.delete(BookContract.BookmarkEntry.TABLE_NAME, selection, selectionArgs);
+                // fall through
+            case BOOKMARK:
+                table = BookContract.BookmarkEntry.TABLE_NAME;
+                dependentUris = new Uri[0];
+                break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
+
+        // The sums of the albums of deleted audio files change as well
+        Set<Long> albumIds = null;
+        if (table.equals(BookContract.AudioEntry.TABLE_NAME)) {
+            albumIds = getAlbumIds(database, selection, selectionArgs);
+        }
+
+        int rowsDeleted = database.delete(table, selection, selectionArgs);
+
+        // Send a single notification per table that might have changed
+        if (rowsDeleted != 0) {
+            boolean isOutermostBatch = beginBatch();
+            notifyChange(uri);
+            for (Uri dependentUri : dependentUris) {
+                notifyChange(dependentUri);
+            }
+            if (albumIds != null) {
+                notifyRowsChanged(BookContract.AlbumEntry.CONTENT_URI, albumIds);
+            }
+            endBatch(isOutermostBatch);
+        }
+
+        return rowsDeleted;
     }
 
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        sCallCounts.incrementAndGet(CALL_UPDATE);
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case AUDIO:
@@ -484,19 +599,34 @@ public class BookProvider extends ContentProvider {
         if (!isValidAudioFileEntry(values)) {
             throw new IllegalArgumentException("Sanity check failed: corrupted content values");
         }
+        putSortKey(values);
 
         // Get writable database
         SQLiteDatabase db = mDbHelper.getWritableDatabase();
 
+        // The sums of the albums only change with the times or the album of the audio files
+        Set<Long> albumIds = null;
+        if (values.containsKey(BookContract.AudioEntry.COLUMN_TIME) || values.containsKey(BookContract.AudioEntry.COLUMN_COMPLETED_TIME)
+                || values.containsKey(BookContract.AudioEntry.COLUMN_ALBUM)) {
+            albumIds = getAlbumIds(db, selection, selectionArgs);
+            Long newAlbumId = values.getAsLong(BookContract.AudioEntry.COLUMN_ALBUM);
+            if (newAlbumId != null) {
+                albumIds.add(newAlbumId);
+            }
+        }
+
         // Update the table
         int rowsUpdated = db.update(BookContract.AudioEntry.TABLE_NAME, values, selection, selectionArgs);
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-            if (uri != BookContract.AlbumEntry.CONTENT_URI)
-                getContext().getContentResolver().notifyChange(BookContract.AlbumEntry.CONTENT_URI, null);
+            boolean isOutermostBatch = beginBatch();
+            notifyChange(uri);
+            if (albumIds != null) {
+                notifyRowsChanged(BookContract.AlbumEntry.CONTENT_URI, albumIds);
+            }
+            endBatch(isOutermostBatch);
         }
 
         return rowsUpdated;
@@ -515,6 +645,7 @@ public class BookProvider extends ContentProvider {
         if (!isValidAlbumEntry(values)) {
             throw new IllegalArgumentException("Sanity check failed: corrupted content values");
         }
+        putSortKey(values);
 
         // Get writable database
         SQLiteDatabase db = mDbHelper.getWritableDatabase();
@@ -525,7 +656,7 @@ public class BookProvider extends ContentProvider {
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return rowsUpdated;
@@ -554,7 +685,7 @@ public class BookProvider extends ContentProvider {
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return rowsUpdated;
@@ -650,41 +781,120 @@ public class BookProvider extends ContentProvider {
     }
 
     /*
-     * Return ids of elements in given table that are affected by the given query.
+     * Add the sort key of the title to the values of an album or audio file, if the title is
+     * written. Both tables name the columns the same.
+     */
+    private static void putSortKey(ContentValues values) {
+        if (values.containsKey(BookContract.AlbumEntry.COLUMN_TITLE)) {
+            values.put(BookContract.AlbumEntry.COLUMN_SORT_KEY, SortKey.of(values.getAsString(BookContract.AlbumEntry.COLUMN_TITLE)));
+        }
+    }
+
+    /*
+     * Get the albums of the audio files that match the selection
+     */
+    private static Set<Long> getAlbumIds(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Set<Long> albumIds = new LinkedHashSet<>();
+        String[] columns = {BookContract.AudioEntry.COLUMN_ALBUM};
+        Cursor c = db.query(true, BookContract.AudioEntry.TABLE_NAME, columns, selection, selectionArgs, null, null, null, null);
+        while (c.moveToNext()) {
+            albumIds.add(c.getLong(0));
+        }
+        c.close();
+        return albumIds;
+    }
+
+    /*
+     * Notify all listeners that the data at the given URI has changed. The URI should be the one
+     * of the changed row where possible: listeners of the table are notified of the changes of its
+     * rows as well, while listeners of a single row are not notified of the changes of other rows.
+     * While a batch is applied the notification is deferred until the batch is finished.
      */
-    private ArrayList<Long> getAffectedIds(Uri uri, String selection, String[] selectionArgs) {
-        ArrayList<Long> ids = new ArrayList<>();
-
-        // Determine which table is queried
-        String column;
-        if (uri == BookContract.DirectoryEntry.CONTENT_URI) {
-            column = BookContract.DirectoryEntry._ID;
-        } else if (uri == BookContract.AlbumEntry.CONTENT_URI) {
-            column = BookContract.AlbumEntry._ID;
-        } else if (uri == BookContract.AudioEntry.CONTENT_URI) {
-            column = BookContract.AudioEntry._ID;
-        } else if (uri == BookContract.BookmarkEntry.CONTENT_URI) {
-            column = BookContract.BookmarkEntry._ID;
+    private void notifyChange(Uri uri) {
+        Set<Uri> pendingNotifications = sPendingNotifications.get();
+        if (pendingNotifications != null) {
+            pendingNotifications.add(uri);
         } else {
-            return ids;
+            getContext().getContentResolver().notifyChange(uri, null);
         }
+    }
 
-        // Query the database
-        Cursor c = query(uri, new String[]{column}, selection, selectionArgs, null);
+    /*
+     * Notify the listeners of the given rows of the table
+     */
+    private void notifyRowsChanged(Uri tableUri, Set<Long> ids) {
+        if (ids.size() > MAX_ROW_NOTIFICATIONS) {
+            notifyChange(tableUri);
+            return;
+        }
+        for (long id : ids) {
+            notifyChange(ContentUris.withAppendedId(tableUri, id));
+        }
+    }
 
-        if (c == null) {
-            return ids;
-        } else if (c.getCount() < 1) {
-            c.close();
-            return ids;
+    /*
+     * Start collecting notifications on the current thread. Returns false if a batch is already
+     * being applied, in which case the outer batch sends the notifications.
+     */
+    private boolean beginBatch() {
+        if (sPendingNotifications.get() != null) {
+            return false;
         }
+        sPendingNotifications.set(new LinkedHashSet<>());
+        return true;
+    }
 
-        while (c.moveToNext()) {
-            long id = c.getLong(c.getColumnIndex(column));
-            ids.add(id);
+    /*
+     * Send the notifications collected during the batch. The rows of a table are merged into a
+     * notification of the table if the table itself or too many of its rows have changed.
+     */
+    private void endBatch(boolean isOutermostBatch) {
+        if (!isOutermostBatch) {
+            return;
+        }
+        Set<Uri> pendingNotifications = sPendingNotifications.get();
+        sPendingNotifications.remove();
+
+        HashMap<Uri, Set<Uri>> notificationsByTable = new LinkedHashMap<>();
+        for (Uri uri : pendingNotifications) {
+            Uri tableUri = getTableUri(uri);
+            Set<Uri> tableNotifications = notificationsByTable.get(tableUri);
+            if (tableNotifications == null) {
+                tableNotifications = new LinkedHashSet<>();
+                notificationsByTable.put(tableUri, tableNotifications);
+            }
+            tableNotifications.add(uri);
+        }
+        for (Map.Entry<Uri, Set<Uri>> tableNotifications : notificationsByTable.entrySet()) {
+            Uri tableUri = tableNotifications.getKey();
+            Set<Uri> uris = tableNotifications.getValue();
+            if (uris.contains(tableUri) || uris.size() > MAX_ROW_NOTIFICATIONS) {
+                getContext().getContentResolver().notifyChange(tableUri, null);
+                continue;
+            }
+            for (Uri uri : uris) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
         }
-        c.close();
+    }
 
-        return ids;
+    /*
+     * Return the content URI of the table the given URI belongs to. Notifying the table URI also
+     * notifies the listeners of its single rows.
+     */
+    private Uri getTableUri(Uri uri) {
+        int match = sUriMatcher.match(uri);
+        switch (match - match % 100) {
+            case AUDIO:
+                return BookContract.AudioEntry.CONTENT_URI;
+            case ALBUM:
+                return BookContract.AlbumEntry.CONTENT_URI;
+            case BOOKMARK:
+                return BookContract.BookmarkEntry.CONTENT_URI;
+            case DIRECTORY:
+                return BookContract.DirectoryEntry.CONTENT_URI;
+            default:
+                return uri;
+        }
     }
 }
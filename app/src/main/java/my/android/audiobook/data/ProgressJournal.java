@@ -0,0 +1,129 @@
+package my.android.audiobook.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of playback positions in a memory-mapped file. A position is recorded by
+ * writing a few bytes to the mapped pages, which the system writes back to the file even if the
+ * process is killed. The journal only holds positions that are not in the database yet, it is
+ * rewritten with the remaining positions whenever they were written to the database.
+ *
+ * The file starts with a header of the magic number and a generation, followed by two regions of
+ * records. The records of a generation are in the region of its parity, so a rewrite fills the
+ * other region and publishes the new generation in the header last. If the process dies during
+ * a rewrite, the previous generation is still complete. Each record holds the ID of the audio
+ * file, the position and a checksum over both and the generation. A record that was torn by the
+ * death of the process, or that is left over from an earlier generation, does not match its
+ * checksum and ends the journal.
+ */
+class ProgressJournal {
+    private static final int MAGIC = 0x41425047;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 16;
+    private static final int CAPACITY = 256;
+    private static final int REGION_SIZE = CAPACITY * RECORD_SIZE;
+
+    private final File mFile;
+    private MappedByteBuffer mBuffer;
+    private int mGeneration = 0;
+    private int mRecordCount = 0;
+
+    ProgressJournal(File file) {
+        mFile = file;
+    }
+
+    /*
+     * Map the journal file and return the positions it contains, the last one of each audio file
+     */
+    HashMap<Long, Integer> open() throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            // The mapping stays valid after the file is closed
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 2 * REGION_SIZE);
+        } finally {
+            file.close();
+        }
+
+        HashMap<Long, Integer> positions = new HashMap<>();
+        if (mBuffer.getInt(0) != MAGIC) {
+            return positions;
+        }
+        mGeneration = mBuffer.getInt(4);
+        for (int i = 0; i < CAPACITY; i++) {
+            int offset = getOffset(mGeneration, i);
+            long audioFileId = mBuffer.getLong(offset);
+            int completedTime = mBuffer.getInt(offset + 8);
+            if (audioFileId <= 0 || mBuffer.getInt(offset + 12) != getChecksum(mGeneration, audioFileId, completedTime)) {
+                break;
+            }
+            positions.put(audioFileId, completedTime);
+        }
+        return positions;
+    }
+
+    /*
+     * Append a position. Returns false if the journal is full.
+     */
+    boolean append(long audioFileId, int completedTime) {
+        if (mRecordCount == CAPACITY) {
+            return false;
+        }
+        writeRecord(mGeneration, mRecordCount, audioFileId, completedTime);
+        mRecordCount++;
+        return true;
+    }
+
+    /*
+     * Replace the records with the given positions. The records are written to the other region
+     * and the previous generation is replaced by publishing the new one in the header, at once.
+     * Returns false and keeps the previous generation if not all positions fit into the journal.
+     */
+    boolean rewrite(Map<Long, Integer> positions) {
+        if (positions.size() > CAPACITY) {
+            return false;
+        }
+        int generation = mGeneration + 1;
+        int recordCount = 0;
+        for (Map.Entry<Long, Integer> position : positions.entrySet()) {
+            writeRecord(generation, recordCount++, position.getKey(), position.getValue());
+        }
+        if (recordCount < CAPACITY) {
+            // End the records, the next one might be valid by chance
+            mBuffer.putLong(getOffset(generation, recordCount), 0);
+        }
+
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, generation);
+        mGeneration = generation;
+        mRecordCount = recordCount;
+        return true;
+    }
+
+    private void writeRecord(int generation, int index, long audioFileId, int completedTime) {
+        int offset = getOffset(generation, index);
+        mBuffer.putLong(offset, audioFileId);
+        mBuffer.putInt(offset + 8, completedTime);
+        // The checksum is written last, such that a partially written record is never valid
+        mBuffer.putInt(offset + 12, getChecksum(generation, audioFileId, completedTime));
+    }
+
+    /*
+     * Get the offset of a record in the region of the generation
+     */
+    private static int getOffset(int generation, int index) {
+        return HEADER_SIZE + (generation & 1) * REGION_SIZE + index * RECORD_SIZE;
+    }
+
+    private static int getChecksum(int generation, long audioFileId, int completedTime) {
+        int checksum = MAGIC;
+        checksum = 31 * checksum + (int) (audioFileId ^ (audioFileId >>> 32));
+        checksum = 31 * checksum + completedTime;
+        return 31 * checksum + generation;
+    }
+}
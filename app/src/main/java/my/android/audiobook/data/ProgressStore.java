@@ -0,0 +1,242 @@
+package my.android.audiobook.data;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store for the playback position of the audio files. The position is saved on every pause, seek
+ * and track change, and dragging the seek bar saves it many times per second. A saved position
+ * is only recorded in a memory-mapped journal and kept per audio file in memory. The positions
+ * are written to the database in one transaction when the store is flushed, e.g. when the
+ * playback is paused, or at the latest after a few seconds. The journal is replayed when the
+ * store is created, so no position is lost if the process dies before the flush.
+ *
+ * The database is updated with a compiled statement that is reused for every position. Only the
+ * listeners of the written audio files are notified, the album list picks up the new album
+ * progress when it is reloaded.
+ */
+public class ProgressStore {
+    private static final String LOG_TAG = ProgressStore.class.getSimpleName();
+
+    private static final String JOURNAL_NAME = "progress.journal";
+    // Time in seconds after which saved positions are written to the database
+    private static final long FLUSH_DELAY = 10;
+
+    private static final String SQL_UPDATE_COMPLETED_TIME = "UPDATE " + BookContract.AudioEntry.TABLE_NAME
+            + " SET " + BookContract.AudioEntry.COLUMN_COMPLETED_TIME + "=? WHERE " + BookContract.AudioEntry._ID + "=?";
+
+    private static ProgressStore sInstance = null;
+
+    // The journal is replayed and the positions are written on this thread, in this order
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "ProgressStore"));
+    private final Context mContext;
+    // Only used on the thread of the executor
+    private SQLiteStatement mUpdateStatement = null;
+
+    // Positions that are not written to the database yet, guarded by this
+    private final HashMap<Long, Integer> mPendingPositions = new HashMap<>();
+    // The journal is null until it was replayed, or if it cannot be mapped
+    private ProgressJournal mJournal = null;
+    private ScheduledFuture<?> mScheduledFlush = null;
+
+    private ProgressStore(Context context) {
+        mContext = context;
+        mExecutor.execute(this::replayJournal);
+    }
+
+    public static synchronized ProgressStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProgressStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /*
+     * Save the completed time of the audio file. It is written to the database with the next
+     * flush, which happens after a few seconds at the latest.
+     */
+    public synchronized void saveCompletedTime(long audioFileId, int completedTime) {
+        completedTime = Math.max(0, completedTime);
+        mPendingPositions.put(audioFileId, completedTime);
+
+        if (mJournal != null && !mJournal.append(audioFileId, completedTime)) {
+            // The journal is full of positions that were saved again since, keep the last ones
+            if (!mJournal.rewrite(mPendingPositions)) {
+                flush();
+                return;
+            }
+        }
+        if (mScheduledFlush == null) {
+            mScheduledFlush = mExecutor.schedule(this::writePendingPositions, FLUSH_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * Write the saved positions to the database in the background
+     */
+    public void flush() {
+        mExecutor.execute(this::writePendingPositions);
+    }
+
+    /*
+     * Write the saved positions to the database and wait until they are written, e.g. before the
+     * database file is copied
+     */
+    public void flushAndWait() {
+        runAndWait(this::writePendingPositions);
+    }
+
+    /*
+     * Drop the saved positions that are not written to the database yet. The positions belong to
+     * the audio files by their IDs, which refer to other audio files once another database was
+     * imported.
+     */
+    public void clear() {
+        runAndWait(() -> {
+            synchronized (this) {
+                if (mScheduledFlush != null) {
+                    mScheduledFlush.cancel(false);
+                    mScheduledFlush = null;
+                }
+                mPendingPositions.clear();
+                if (mJournal != null) {
+                    mJournal.rewrite(mPendingPositions);
+                }
+            }
+        });
+    }
+
+    /*
+     * Get the completed time of the audio file, taking into account a position that was saved but
+     * not written to the database yet
+     */
+    public synchronized int getCompletedTime(long audioFileId, int storedCompletedTime) {
+        Integer completedTime = mPendingPositions.get(audioFileId);
+        return completedTime != null ? completedTime : storedCompletedTime;
+    }
+
+    /*
+     * Run the task on the thread of the executor after the tasks that are already queued, such
+     * that no position is written in the meantime
+     */
+    private void runAndWait(Runnable task) {
+        try {
+            mExecutor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Could not access the saved positions", e.getCause());
+        }
+    }
+
+    private void replayJournal() {
+        ProgressJournal journal = new ProgressJournal(new File(mContext.getFilesDir(), JOURNAL_NAME));
+        HashMap<Long, Integer> replayedPositions;
+        try {
+            replayedPositions = journal.open();
+        } catch (IOException e) {
+            // Without the journal the positions are only lost if the process dies before a flush
+            Log.e(LOG_TAG, "Could not open the progress journal", e);
+            return;
+        }
+
+        boolean journaled;
+        synchronized (this) {
+            // Positions saved since the process was started are newer than the replayed ones
+            for (Map.Entry<Long, Integer> position : replayedPositions.entrySet()) {
+                if (!mPendingPositions.containsKey(position.getKey())) {
+                    mPendingPositions.put(position.getKey(), position.getValue());
+                }
+            }
+            journaled = journal.rewrite(mPendingPositions);
+            mJournal = journal;
+        }
+
+        if (!replayedPositions.isEmpty()) {
+            Log.i(LOG_TAG, "Replayed " + replayedPositions.size() + " positions from the progress journal");
+            writePendingPositions();
+            // The album list shows the progress that was lost from the database
+            mContext.getContentResolver().notifyChange(BookContract.AlbumEntry.CONTENT_URI, null);
+        } else if (!journaled) {
+            // Positions that did not fit into the journal are only kept in memory
+            writePendingPositions();
+        }
+    }
+
+    /*
+     * Write the saved positions to the database in one transaction. Runs on the thread of the
+     * executor.
+     */
+    private void writePendingPositions() {
+        HashMap<Long, Integer> positions;
+        synchronized (this) {
+            if (mScheduledFlush != null) {
+                mScheduledFlush.cancel(false);
+                mScheduledFlush = null;
+            }
+            if (mPendingPositions.isEmpty()) {
+                return;
+            }
+            positions = new HashMap<>(mPendingPositions);
+        }
+
+        ArrayList<Long> updatedIds = new ArrayList<>();
+        try {
+            SQLiteDatabase db = BookDbHelper.getInstance(mContext).getWritableDatabase();
+            if (mUpdateStatement == null) {
+                mUpdateStatement = db.compileStatement(SQL_UPDATE_COMPLETED_TIME);
+            }
+            db.beginTransactionNonExclusive();
+            try {
+                for (Map.Entry<Long, Integer> position : positions.entrySet()) {
+                    mUpdateStatement.bindLong(1, position.getValue());
+                    mUpdateStatement.bindLong(2, position.getKey());
+                    if (mUpdateStatement.executeUpdateDelete() != 0) {
+                        updatedIds.add(position.getKey());
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLException | IllegalStateException e) {
+            // The positions stay in the journal and are written with the next flush. The statement
+            // cannot be used anymore if the database was closed, it is compiled again.
+            Log.e(LOG_TAG, "Could not write " + positions.size() + " positions", e);
+            mUpdateStatement = null;
+            return;
+        }
+
+        synchronized (this) {
+            // Positions that were saved again during the transaction are kept for the next flush
+            for (Map.Entry<Long, Integer> position : positions.entrySet()) {
+                if (position.getValue().equals(mPendingPositions.get(position.getKey()))) {
+                    mPendingPositions.remove(position.getKey());
+                }
+            }
+            if (mJournal != null && !mJournal.rewrite(mPendingPositions)) {
+                // More positions were saved during the transaction than fit into the journal
+                flush();
+            }
+        }
+
+        for (long audioFileId : updatedIds) {
+            mContext.getContentResolver().notifyChange(ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, audioFileId), null);
+        }
+    }
+}
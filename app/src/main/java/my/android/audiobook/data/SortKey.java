@@ -0,0 +1,50 @@
+package my.android.audiobook.data;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Natural sort keys of titles. The keys are stored with the albums and audio files, such that
+ * the lists are read in the order of an index. Comparing two keys as plain strings orders the
+ * titles case and accent insensitively, with numbers in the order of their values, e.g.
+ * "Chapter 2" before "Chapter 10".
+ */
+public class SortKey {
+    /*
+     * Get the sort key of the title. Each number is written with the count of its digits in
+     * front, so a number with more digits sorts after one with fewer. Leading zeros are dropped.
+     */
+    public static String of(String title) {
+        if (title == null) {
+            return null;
+        }
+        // Separate the accents from their letters and drop them
+        String normalized = Normalizer.normalize(title, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+
+        StringBuilder key = new StringBuilder(normalized.length() + 8);
+        int i = 0;
+        while (i < normalized.length()) {
+            char c = normalized.charAt(i);
+            if (c < '0' || c > '9') {
+                key.append(c);
+                i++;
+                continue;
+            }
+
+            int start = i;
+            while (i < normalized.length() && normalized.charAt(i) >= '0' && normalized.charAt(i) <= '9') {
+                i++;
+            }
+            int digitsStart = start;
+            while (digitsStart < i - 1 && normalized.charAt(digitsStart) == '0') {
+                digitsStart++;
+            }
+            int digitCount = Math.min(i - digitsStart, 99);
+            if (digitCount < 10) {
+                key.append('0');
+            }
+            key.append(digitCount).append(normalized, digitsStart, digitsStart + digitCount);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package my.android.audiobook.helpers;
+
+import android.os.CancellationSignal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Walks a directory tree in parallel and collects the folders that contain audio files. Every
+ * folder is listed in its own task, subfolders are handed to the executor as soon as they are
+ * found, such that idle workers pick up the remaining parts of the tree. Subtrees that contain a
+ * .nomedia file or whose folder name matches one of the ignore patterns are skipped.
+ */
+class AlbumTreeWalker {
+    private static final String NO_MEDIA = ".nomedia";
+
+    private final File mRoot;
+    private final boolean mShowHidden;
+    private final boolean mSniffFormats;
+    private final int mMaxDepth;
+    private final Pattern mIgnorePattern;
+
+    private final ConcurrentLinkedQueue<String> mAlbumPaths = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPendingFolders = new AtomicInteger(0);
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+    private volatile boolean mCancelled = false;
+    private Executor mExecutor;
+    private CancellationSignal mCancellationSignal;
+
+    /*
+     * The ignore patterns are a comma separated list of folder names that may contain the
+     * wildcards * and ?
+     */
+    AlbumTreeWalker(File root, boolean showHidden, boolean sniffFormats, int maxDepth, String ignorePatterns) {
+        mRoot = root;
+        mShowHidden = showHidden;
+        mSniffFormats = sniffFormats;
+        mMaxDepth = maxDepth;
+        mIgnorePattern = compileIgnorePatterns(ignorePatterns);
+    }
+
+    /*
+     * Get the absolute paths of all folders below the root that contain audio files. The root
+     * itself is never an album. Blocks until the whole tree has been walked, throws an
+     * OperationCanceledException if the walk was cancelled before.
+     */
+    ArrayList<String> findAlbums(Executor executor, CancellationSignal cancellationSignal) throws InterruptedException {
+        mExecutor = executor;
+        mCancellationSignal = cancellationSignal;
+        mPendingFolders.set(1);
+        mExecutor.execute(() -> visit(mRoot, 0));
+        try {
+            mFinished.await();
+        } catch (InterruptedException e) {
+            // Let the remaining tasks finish quickly
+            mCancelled = true;
+            throw e;
+        }
+        mCancellationSignal.throwIfCanceled();
+        return new ArrayList<>(mAlbumPaths);
+    }
+
+    private void visit(File dir, int depth) {
+        try {
+            if (mCancelled || mCancellationSignal.isCanceled()) {
+                return;
+            }
+
+            DirectoryListing listing = DirectoryListing.read(dir, mShowHidden, mSniffFormats);
+            if (listing == null || listing.contains(NO_MEDIA)) {
+                return;
+            }
+            if (depth > 0 && !listing.getAudioFiles().isEmpty()) {
+                mAlbumPaths.add(dir.getAbsolutePath());
+            }
+            if (depth >= mMaxDepth) {
+                return;
+            }
+
+            // Albums can be nested, e.g. a book with one folder per CD, so folders containing
+            // audio files are walked as well
+            for (String name : listing.getSubDirectories()) {
+                if (mIgnorePattern != null && mIgnorePattern.matcher(name).matches()) {
+                    continue;
+                }
+                File subDir = new File(dir, name);
+                mPendingFolders.incrementAndGet();
+                mExecutor.execute(() -> visit(subDir, depth + 1));
+            }
+        } finally {
+            if (mPendingFolders.decrementAndGet() == 0) {
+                mFinished.countDown();
+            }
+        }
+    }
+
+    private static Pattern compileIgnorePatterns(String ignorePatterns) {
+        if (ignorePatterns == null) {
+            return null;
+        }
+
+        StringBuilder regex = new StringBuilder();
+        for (String pattern : ignorePatterns.split(",")) {
+            pattern = pattern.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+
+            // Translate the wildcards and quote everything else
+            int literalStart = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (i > literalStart) {
+                        regex.append(Pattern.quote(pattern.substring(literalStart, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                    literalStart = i + 1;
+                }
+            }
+            if (literalStart < pattern.length()) {
+                regex.append(Pattern.quote(pattern.substring(literalStart)));
+            }
+        }
+
+        if (regex.length() == 0) {
+            return null;
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+}
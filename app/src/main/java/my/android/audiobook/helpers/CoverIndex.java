@@ -0,0 +1,73 @@
+package my.android.audiobook.helpers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ranked list of the cover candidates in an album folder. Images named cover, folder or front
+ * are preferred in this order, all other images follow by size, largest first. The index is
+ * stored with the album as the names of the candidates joined by a separator.
+ */
+public class CoverIndex {
+    private static final String[] PREFERRED_NAMES = {"cover", "folder", "front"};
+
+    // File names cannot contain this character, so it can separate the candidates
+    private static final String SEPARATOR = "/";
+
+    /*
+     * Rank the images of an album folder. Returns null if there are no images.
+     */
+    public static String buildIndex(List<DirectoryListing.Entry> images) {
+        if (images.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<DirectoryListing.Entry> candidates = new ArrayList<>(images);
+        Collections.sort(candidates, (image1, image2) -> {
+            int rank1 = getRank(image1.getName());
+            int rank2 = getRank(image2.getName());
+            if (rank1 != rank2) {
+                return Integer.compare(rank1, rank2);
+            }
+            if (image1.getSize() != image2.getSize()) {
+                return Long.compare(image2.getSize(), image1.getSize());
+            }
+            // Only fall back to the name so that the order does not depend on the listing
+            return image1.getName().compareTo(image2.getName());
+        });
+
+        StringBuilder index = new StringBuilder();
+        for (DirectoryListing.Entry candidate : candidates) {
+            if (index.length() > 0) {
+                index.append(SEPARATOR);
+            }
+            index.append(candidate.getName());
+        }
+        return index.toString();
+    }
+
+    /*
+     * Get the file name of the best ranked candidate, null if the index is empty
+     */
+    public static String getBestCandidate(String index) {
+        if (index == null || index.isEmpty()) {
+            return null;
+        }
+        int end = index.indexOf(SEPARATOR);
+        return end < 0 ? index : index.substring(0, end);
+    }
+
+    private static int getRank(String fileName) {
+        int extensionStart = fileName.lastIndexOf('.');
+        String baseName = extensionStart < 0 ? fileName : fileName.substring(0, extensionStart);
+        baseName = baseName.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < PREFERRED_NAMES.length; i++) {
+            if (baseName.equals(PREFERRED_NAMES[i])) {
+                return i;
+            }
+        }
+        return PREFERRED_NAMES.length;
+    }
+}
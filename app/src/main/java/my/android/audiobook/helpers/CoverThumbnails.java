@@ -0,0 +1,167 @@
+package my.android.audiobook.helpers;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.util.Log;
+
+import my.android.audiobook.R;
+import my.android.audiobook.data.BookContract;
+import my.android.audiobook.models.Album;
+import my.android.audiobook.utils.BitmapUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+
+/**
+ * Store of pre-scaled thumbnails of the cover images embedded in the audio files. The covers are
+ * extracted once during the synchronization, such that the album list, the player and the
+ * notification only have to decode a small file. The thumbnails are named after the fingerprint
+ * of the audio file they were taken from, which is stored with the album.
+ */
+public class CoverThumbnails {
+    private static final String LOG_TAG = CoverThumbnails.class.getSimpleName();
+
+    public static final int SIZE_LIST = 0;
+    public static final int SIZE_NOTIFICATION = 1;
+    public static final int SIZE_PLAYER = 2;
+    private static final String[] SIZE_NAMES = {"list", "notification", "player"};
+
+    private static final String DIRECTORY = "covers";
+    private static final int NOTIFICATION_PIXELS = 200;
+    private static final int PLAYER_PIXELS = 1024;
+    private static final int JPEG_QUALITY = 90;
+
+    /*
+     * Extract the embedded cover of the audio file and store its thumbnails. Returns false if the
+     * file does not contain a cover.
+     */
+    static boolean create(Context context, File audioFile, String fingerprint) {
+        byte[] coverData;
+        MediaMetadataRetriever metaRetriever = new MediaMetadataRetriever();
+        try {
+            metaRetriever.setDataSource(audioFile.getAbsolutePath());
+            coverData = metaRetriever.getEmbeddedPicture();
+        } catch (java.lang.RuntimeException e) {
+            Log.e(LOG_TAG, "Could not retrieve the cover of " + audioFile, e);
+            return false;
+        } finally {
+            metaRetriever.release();
+        }
+        if (coverData == null) {
+            return false;
+        }
+
+        File dir = new File(context.getFilesDir(), DIRECTORY);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return false;
+        }
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            int pixels = getPixels(context, size);
+            Bitmap bitmap = BitmapUtils.decodeSampledBitmap(coverData, pixels, pixels);
+            if (bitmap == null) {
+                return false;
+            }
+            // The sampled bitmap is up to twice as large as requested
+            float scale = (float) pixels / Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (scale < 1) {
+                Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale), Math.round(bitmap.getHeight() * scale), true);
+                bitmap.recycle();
+                bitmap = scaledBitmap;
+            }
+            boolean written = write(bitmap, getFile(context, fingerprint, size));
+            bitmap.recycle();
+            if (!written) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean exists(Context context, String fingerprint) {
+        for (int size = 0; size < SIZE_NAMES.length; size++) {
+            if (!getFile(context, fingerprint, size).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Get the path of the album's thumbnail in the given size, null if the album has none
+     */
+    public static String getPath(Context context, Album album, int size) {
+        if (album == null || album.getEmbeddedCover() == null) {
+            return null;
+        }
+        File file = getFile(context, album.getEmbeddedCover(), size);
+        return file.exists() ? file.getAbsolutePath() : null;
+    }
+
+    /*
+     * Delete the thumbnails that are not referenced by any album anymore
+     */
+    static void prune(Context context) {
+        File[] files = new File(context.getFilesDir(), DIRECTORY).listFiles();
+        if (files == null) {
+            return;
+        }
+
+        String[] projection = {BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER};
+        Cursor c = context.getContentResolver().query(BookContract.AlbumEntry.CONTENT_URI, projection, null, null, null);
+        if (c == null) {
+            return;
+        }
+        HashSet<String> fingerprints = new HashSet<>();
+        while (c.moveToNext()) {
+            fingerprints.add(c.getString(0));
+        }
+        c.close();
+
+        for (File file : files) {
+            String name = file.getName();
+            int end = name.lastIndexOf('_');
+            if (end < 0 || name.endsWith(".tmp") || !fingerprints.contains(name.substring(0, end))) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getFile(Context context, String fingerprint, int size) {
+        return new File(new File(context.getFilesDir(), DIRECTORY), fingerprint + "_" + SIZE_NAMES[size] + ".jpg");
+    }
+
+    private static int getPixels(Context context, int size) {
+        switch (size) {
+            case SIZE_LIST:
+                return context.getResources().getDimensionPixelSize(R.dimen.album_item_height);
+            case SIZE_NOTIFICATION:
+                return NOTIFICATION_PIXELS;
+            default:
+                return PLAYER_PIXELS;
+        }
+    }
+
+    /*
+     * Write the bitmap to a temporary file first, such that readers never see a partial image
+     */
+    private static boolean write(Bitmap bitmap, File file) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not write " + file, e);
+            tempFile.delete();
+            return false;
+        }
+        return tempFile.renameTo(file);
+    }
+}
@@ -0,0 +1,222 @@
+package my.android.audiobook.helpers;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+import my.android.audiobook.metadata.AudioFormat;
+import my.android.audiobook.metadata.AudioFormatRegistry;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Content of a directory that is read with a single list call. The entries are only classified
+ * into subdirectories, audio files and images when one of these lists is requested, which costs
+ * at most one stat per entry.
+ */
+public class DirectoryListing {
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png"};
+
+    private final File mDir;
+    private final String[] mNames;
+    private final long mLastModified;
+    private final boolean mShowHidden;
+    private final boolean mSniffFormats;
+
+    private ArrayList<String> mSubDirectories;
+    private ArrayList<Entry> mAudioFiles;
+    private ArrayList<Entry> mImages;
+
+    // Result of the last stat call
+    private boolean mStatIsDirectory;
+    private long mStatSize;
+    private long mStatLastModified;
+
+    private DirectoryListing(File dir, String[] names, long lastModified, boolean showHidden, boolean sniffFormats) {
+        mDir = dir;
+        mNames = names;
+        mLastModified = lastModified;
+        mShowHidden = showHidden;
+        mSniffFormats = sniffFormats;
+    }
+
+    /*
+     * List the directory. Returns null if the directory does not exist or cannot be read.
+     */
+    public static DirectoryListing read(File dir, boolean showHidden, boolean sniffFormats) {
+        // Get the modification time before the entries are listed, such that changes made in
+        // between are detected the next time
+        long lastModified = dir.lastModified();
+        String[] names = dir.list();
+        if (names == null) {
+            return null;
+        }
+        return new DirectoryListing(dir, names, lastModified, showHidden, sniffFormats);
+    }
+
+    public File getDirectory() {
+        return mDir;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    /*
+     * Number of all entries in the directory, including hidden ones
+     */
+    public int getEntryCount() {
+        return mNames.length;
+    }
+
+    /*
+     * Check whether the directory contains an entry with the given name, hidden or not
+     */
+    public boolean contains(String name) {
+        for (String entryName : mNames) {
+            if (entryName.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Names of the readable subdirectories, hidden ones are only included if the option is set
+     */
+    public ArrayList<String> getSubDirectories() {
+        classifyEntries();
+        return mSubDirectories;
+    }
+
+    /*
+     * Audio files in the directory, hidden ones are only included if the option is set
+     */
+    public ArrayList<Entry> getAudioFiles() {
+        classifyEntries();
+        return mAudioFiles;
+    }
+
+    /*
+     * All image files in the directory
+     */
+    public ArrayList<Entry> getImages() {
+        classifyEntries();
+        return mImages;
+    }
+
+    private void classifyEntries() {
+        if (mAudioFiles != null) {
+            return;
+        }
+        mSubDirectories = new ArrayList<>();
+        mAudioFiles = new ArrayList<>();
+        mImages = new ArrayList<>();
+
+        for (String name : mNames) {
+            boolean isHidden = name.startsWith(".");
+            AudioFormat format = AudioFormatRegistry.getFormatFromName(name);
+            boolean isImage = format == null && isImage(name);
+            // Hidden entries can only be images, don't even stat them otherwise
+            if (isHidden && !mShowHidden && !isImage) {
+                continue;
+            }
+
+            File file = new File(mDir, name);
+            if (!stat(file)) {
+                continue;
+            }
+
+            if (mStatIsDirectory) {
+                if (!isHidden || mShowHidden) {
+                    if (file.canRead()) {
+                        mSubDirectories.add(name);
+                    }
+                }
+            } else if (isImage) {
+                mImages.add(new Entry(name, mStatSize, mStatLastModified, null));
+            } else if (!isHidden || mShowHidden) {
+                // The content is only inspected for unknown file extensions
+                if (format == null && mSniffFormats) {
+                    format = AudioFormatRegistry.sniffFormat(file);
+                }
+                if (format != null) {
+                    mAudioFiles.add(new Entry(name, mStatSize, mStatLastModified, format));
+                }
+            }
+        }
+    }
+
+    /*
+     * Get type, size and modification time of the file. Returns false if the file does not exist.
+     */
+    private boolean stat(File file) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            try {
+                StructStat stat = Os.stat(file.getPath());
+                mStatIsDirectory = OsConstants.S_ISDIR(stat.st_mode);
+                mStatSize = stat.st_size;
+                mStatLastModified = stat.st_mtime * 1000;
+                return true;
+            } catch (ErrnoException e) {
+                return false;
+            }
+        }
+
+        // Older versions need a separate call for each attribute
+        mStatIsDirectory = file.isDirectory();
+        if (mStatIsDirectory) {
+            mStatSize = 0;
+            mStatLastModified = 0;
+            return true;
+        }
+        mStatLastModified = file.lastModified();
+        mStatSize = file.length();
+        return mStatLastModified != 0;
+    }
+
+    private static boolean isImage(String name) {
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (name.regionMatches(true, name.length() - extension.length(), extension, 0, extension.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * File in the directory together with the attributes read during the listing
+     */
+    public static class Entry {
+        private final String mName;
+        private final long mSize;
+        private final long mLastModified;
+        private final AudioFormat mFormat;
+
+        Entry(String name, long size, long lastModified, AudioFormat format) {
+            mName = name;
+            mSize = size;
+            mLastModified = lastModified;
+            mFormat = format;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+
+        public long getLastModified() {
+            return mLastModified;
+        }
+
+        public AudioFormat getFormat() {
+            return mFormat;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package my.android.audiobook.helpers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Cheap fingerprints that recognize audio files and albums after they were moved or renamed. A
+ * file fingerprint consists of the file size and a checksum of the first and last few KB, so
+ * only a small part of the file has to be read. An album fingerprint combines the fingerprints of
+ * its audio files, but not their names, so an album is also recognized if its files were renamed
+ * when it was moved. Albums with the same files share their fingerprint.
+ */
+public class FileFingerprint {
+    private static final int SAMPLE_SIZE = 4096;
+    private static final char SEPARATOR = '-';
+
+    /*
+     * Get the fingerprint of a file with the given size, null if the file cannot be read
+     */
+    public static String ofFile(File file, long size) {
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[(int) Math.min(size, 2 * SAMPLE_SIZE)];
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                if (size <= 2 * SAMPLE_SIZE) {
+                    // Small files are read completely
+                    randomAccessFile.readFully(buffer);
+                } else {
+                    randomAccessFile.readFully(buffer, 0, SAMPLE_SIZE);
+                    randomAccessFile.seek(size - SAMPLE_SIZE);
+                    randomAccessFile.readFully(buffer, SAMPLE_SIZE, SAMPLE_SIZE);
+                }
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        checksum.update(buffer, 0, buffer.length);
+        return Long.toString(size) + SEPARATOR + Long.toHexString(checksum.getValue());
+    }
+
+    /*
+     * Check whether the fingerprint was taken of a file with the given size. A stored fingerprint
+     * of a file that was modified in place is usually detected this way without reading the file.
+     */
+    public static boolean matchesSize(String fingerprint, long size) {
+        return fingerprint != null && fingerprint.startsWith(Long.toString(size) + SEPARATOR);
+    }
+
+    /*
+     * Combine the fingerprints of the audio files of an album. Returns null if the album is empty
+     * or if one of the fingerprints is missing.
+     */
+    public static String ofAlbum(List<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<String> entries = new ArrayList<>(fingerprints.size());
+        long totalSize = 0;
+        for (String fingerprint : fingerprints) {
+            if (fingerprint == null) {
+                return null;
+            }
+            entries.add(fingerprint);
+            totalSize += Long.parseLong(fingerprint.substring(0, fingerprint.indexOf(SEPARATOR)));
+        }
+
+        // The checksum must not depend on the order of the directory listing
+        Collections.sort(entries);
+        CRC32 checksum = new CRC32();
+        for (String entry : entries) {
+            // Each fingerprint is terminated, such that the boundaries between them count as well
+            byte[] bytes = (entry + '\n').getBytes(StandardCharsets.UTF_8);
+            checksum.update(bytes, 0, bytes.length);
+        }
+        return Long.toString(totalSize) + SEPARATOR + entries.size() + SEPARATOR + Long.toHexString(checksum.getValue());
+    }
+}
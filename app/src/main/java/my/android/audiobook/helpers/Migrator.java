@@ -4,7 +4,6 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.util.Log;
 import android.widget.Toast;
@@ -12,6 +11,7 @@ import android.widget.Toast;
 import my.android.audiobook.R;
 import my.android.audiobook.data.BookContract;
 import my.android.audiobook.data.BookDbHelper;
+import my.android.audiobook.data.ProgressStore;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,14 +30,17 @@ public class Migrator {
      * Import database from the specified db file
      */
     public void importDatabase(File dbFile) {
+        // Write the saved positions before the database is replaced, such that no position is
+        // written to the imported one
+        ProgressStore progressStore = ProgressStore.getInstance(mContext);
+        progressStore.flushAndWait();
         try {
             File dbFileShm = new File(dbFile + "-shm");
             File dbFileWal = new File(dbFile + "-wal");
             File[] importFiles = {dbFile, dbFileShm, dbFileWal};
 
-            SQLiteDatabase db = mContext.openOrCreateDatabase(BookDbHelper.DATABASE_NAME, Context.MODE_PRIVATE, null);
-            String newDBPath = db.getPath();
-            db.close();
+            // Only get the path, opening the database would change its journal mode
+            String newDBPath = mContext.getDatabasePath(BookDbHelper.DATABASE_NAME).getPath();
 
             File newDBFile = new File(newDBPath);
             File newDBShm = new File(newDBPath + "-shm");
@@ -98,6 +101,9 @@ public class Migrator {
             Toast.makeText(mContext.getApplicationContext(), R.string.import_fail, Toast.LENGTH_LONG).show();
             Log.e(LOG_TAG, e.getMessage());
 
+        } finally {
+            // Positions saved in the meantime refer to the audio files of the replaced database
+            progressStore.clear();
         }
     }
 
@@ -105,9 +111,12 @@ public class Migrator {
      * Export database to the specified directory
      */
     public void exportDatabase(File directory) {
+        // The exported database contains the positions that were saved but not written yet
+        ProgressStore.getInstance(mContext).flushAndWait();
         try {
             if (directory.canWrite()) {
-                String currentDBPath = mContext.openOrCreateDatabase(BookDbHelper.DATABASE_NAME, Context.MODE_PRIVATE, null).getPath();
+                // The write-ahead log is copied along with the database
+                String currentDBPath = mContext.getDatabasePath(BookDbHelper.DATABASE_NAME).getPath();
 
                 File currentDB = new File(currentDBPath);
                 File currentDBShm = new File(currentDBPath + "-shm");
@@ -0,0 +1,101 @@
+package my.android.audiobook.helpers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares two lists that are sorted by the same string keys in a single linear merge, e.g. the
+ * album folders found in the file system with the albums stored in the database. Items whose key
+ * only occurs in the new list have to be inserted, items whose key only occurs in the old list
+ * have to be deleted. Items with equal keys are matched and the listener decides whether they
+ * are kept or updated.
+ */
+public class SortedDiff {
+
+    public interface KeyExtractor<T> {
+        String getKey(T item);
+    }
+
+    public interface Listener<N, O> {
+        void onInsert(N newItem);
+        void onDelete(O oldItem);
+        void onMatch(N newItem, O oldItem);
+    }
+
+    /*
+     * Sort the items by their keys in the order expected by merge. Every key is only extracted
+     * once, as building it may be expensive.
+     */
+    public static <T> void sort(List<T> items, KeyExtractor<T> keyExtractor) {
+        KeyedItem[] keyedItems = new KeyedItem[items.size()];
+        for (int i = 0; i < keyedItems.length; i++) {
+            T item = items.get(i);
+            keyedItems[i] = new KeyedItem(keyExtractor.getKey(item), item);
+        }
+        Arrays.sort(keyedItems, (item1, item2) -> item1.mKey.compareTo(item2.mKey));
+        for (int i = 0; i < keyedItems.length; i++) {
+            @SuppressWarnings("unchecked")
+            T item = (T) keyedItems[i].mItem;
+            items.set(i, item);
+        }
+    }
+
+    /*
+     * Merge the new and the old items and report every item exactly once to the listener. Both
+     * lists have to be sorted by their keys in ascending order and should support fast random
+     * access. Throws an IllegalArgumentException if one of the lists is not sorted.
+     */
+    public static <N, O> void merge(List<N> newItems, KeyExtractor<N> newKeyExtractor, List<O> oldItems, KeyExtractor<O> oldKeyExtractor, Listener<N, O> listener) {
+        int newIndex = 0;
+        int oldIndex = 0;
+        String newKey = getKey(newItems, newIndex, newKeyExtractor, null);
+        String oldKey = getKey(oldItems, oldIndex, oldKeyExtractor, null);
+        while (newKey != null || oldKey != null) {
+            int order;
+            if (newKey == null) {
+                order = 1;
+            } else if (oldKey == null) {
+                order = -1;
+            } else {
+                order = newKey.compareTo(oldKey);
+            }
+
+            if (order < 0) {
+                listener.onInsert(newItems.get(newIndex));
+                newKey = getKey(newItems, ++newIndex, newKeyExtractor, newKey);
+            } else if (order > 0) {
+                listener.onDelete(oldItems.get(oldIndex));
+                oldKey = getKey(oldItems, ++oldIndex, oldKeyExtractor, oldKey);
+            } else {
+                listener.onMatch(newItems.get(newIndex), oldItems.get(oldIndex));
+                newKey = getKey(newItems, ++newIndex, newKeyExtractor, newKey);
+                oldKey = getKey(oldItems, ++oldIndex, oldKeyExtractor, oldKey);
+            }
+        }
+    }
+
+    /*
+     * Get the key of the item at the given index, null after the last item. Duplicate keys are
+     * allowed, a duplicate in the old list is reported as deleted.
+     */
+    private static <T> String getKey(List<T> items, int index, KeyExtractor<T> keyExtractor, String previousKey) {
+        if (index >= items.size()) {
+            return null;
+        }
+        String key = keyExtractor.getKey(items.get(index));
+        if (previousKey != null && key.compareTo(previousKey) < 0) {
+            throw new IllegalArgumentException("Items are not sorted, " + key + " follows " + previousKey);
+        }
+        return key;
+    }
+
+    private static class KeyedItem {
+        private final String mKey;
+        private final Object mItem;
+
+        private KeyedItem(String key, Object item) {
+            mKey = key;
+            mItem = item;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package my.android.audiobook.helpers;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+
+import my.android.audiobook.BuildConfig;
+import my.android.audiobook.data.BookProvider;
+
+/**
+ * Measurements of a single synchronization run. They are serialized as JSON, such that the scan
+ * performance of different versions can be compared. The provider calls and allocations are
+ * counted for the whole process, so they include work done by the UI in the meantime.
+ */
+public class SyncStatistics {
+    @SerializedName("run")
+    private final String mRun;
+    @SerializedName("version")
+    private final String mVersion = BuildConfig.VERSION_NAME;
+    @SerializedName("completed")
+    private boolean mCompleted;
+    @SerializedName("wall_time_ms")
+    private long mWallTime;
+    @SerializedName("directories")
+    int mDirectoryCount;
+    @SerializedName("albums")
+    int mAlbumCount;
+    @SerializedName("unchanged_albums")
+    int mUnchangedAlbumCount;
+    @SerializedName("new_albums")
+    int mNewAlbumCount;
+    @SerializedName("deleted_albums")
+    int mDeletedAlbumCount;
+    @SerializedName("moved_albums")
+    int mMovedAlbumCount;
+    @SerializedName("new_audio_files")
+    int mNewAudioFileCount;
+    @SerializedName("deleted_audio_files")
+    int mDeletedAudioFileCount;
+    @SerializedName("renamed_audio_files")
+    int mRenamedAudioFileCount;
+    @SerializedName("provider_queries")
+    private long mQueryCount;
+    @SerializedName("provider_inserts")
+    private long mInsertCount;
+    @SerializedName("provider_updates")
+    private long mUpdateCount;
+    @SerializedName("provider_deletes")
+    private long mDeleteCount;
+    @SerializedName("provider_batches")
+    private long mBatchCount;
+    // -1 if the runtime does not report allocations
+    @SerializedName("allocated_bytes")
+    private long mAllocatedBytes;
+
+    private transient long mStartTime;
+    private transient long mStartAllocatedBytes;
+
+    SyncStatistics(String run) {
+        mRun = run;
+        mStartTime = SystemClock.elapsedRealtime();
+        mStartAllocatedBytes = getAllocatedBytes();
+        mQueryCount = -BookProvider.getCallCount(BookProvider.CALL_QUERY);
+        mInsertCount = -BookProvider.getCallCount(BookProvider.CALL_INSERT);
+        mUpdateCount = -BookProvider.getCallCount(BookProvider.CALL_UPDATE);
+        mDeleteCount = -BookProvider.getCallCount(BookProvider.CALL_DELETE);
+        mBatchCount = -BookProvider.getCallCount(BookProvider.CALL_BATCH);
+    }
+
+    /*
+     * Take the final measurements at the end of the run
+     */
+    void finish(boolean completed) {
+        mCompleted = completed;
+        mWallTime = SystemClock.elapsedRealtime() - mStartTime;
+        mQueryCount += BookProvider.getCallCount(BookProvider.CALL_QUERY);
+        mInsertCount += BookProvider.getCallCount(BookProvider.CALL_INSERT);
+        mUpdateCount += BookProvider.getCallCount(BookProvider.CALL_UPDATE);
+        mDeleteCount += BookProvider.getCallCount(BookProvider.CALL_DELETE);
+        mBatchCount += BookProvider.getCallCount(BookProvider.CALL_BATCH);
+        long allocatedBytes = getAllocatedBytes();
+        mAllocatedBytes = allocatedBytes < 0 || mStartAllocatedBytes < 0 ? -1 : allocatedBytes - mStartAllocatedBytes;
+    }
+
+    public String getRun() {
+        return mRun;
+    }
+
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    public long getWallTime() {
+        return mWallTime;
+    }
+
+    public String toJson() {
+        return new Gson().toJson(this);
+    }
+
+    /*
+     * Total number of bytes allocated by the runtime so far, -1 if not available
+     */
+    private static long getAllocatedBytes() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            try {
+                return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
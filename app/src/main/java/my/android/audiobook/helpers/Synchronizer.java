@@ -1,199 +1,1004 @@
 package my.android.audiobook.helpers;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
+import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
+import android.util.Log;
 import android.widget.Toast;
 
+import my.android.audiobook.BuildConfig;
 import my.android.audiobook.R;
 import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.SortKey;
 import my.android.audiobook.listeners.SynchronizationStateListener;
 import my.android.audiobook.models.Album;
 import my.android.audiobook.models.AudioFile;
 import my.android.audiobook.models.Directory;
 
 import java.io.File;
-import java.io.FilenameFilter;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Synchronizer {
+    private static final String LOG_TAG = Synchronizer.class.getSimpleName();
+
+    // Number of albums that are synchronized in parallel
+    private static final int WORKER_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // Number of albums that are written to the database in a single transaction. An interrupted
+    // synchronization only has to repeat the albums of the last batch.
+    private static final int ALBUMS_PER_BATCH = 32;
+
+    // Version of the stored album fingerprints, a new version makes the next synchronization of
+    // the library take them again
+    private static final int ALBUM_FINGERPRINT_VERSION = 1;
+
+    // Time budget for synchronizations started by the user, the remaining albums are
+    // synchronized in the background afterwards
+    public static final long FOREGROUND_TIME_BUDGET = 5000;
+
+    // Synchronizations are queued on a single coordinating thread, the albums are processed by
+    // a bounded pool of worker threads
+    private static final ExecutorService sSyncExecutor = Executors.newSingleThreadExecutor(newThreadFactory("Synchronizer"));
+    private static final ExecutorService sWorkerPool = Executors.newFixedThreadPool(WORKER_COUNT, newThreadFactory("SynchronizerWorker"));
+
     private Context mContext;
     private SharedPreferences mPrefManager;
-    private SynchronizationStateListener mListener = null;
+    private volatile SynchronizationStateListener mListener = null;
+    private Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Signal for all synchronizations started by this synchronizer, replaced once cancelled
+    private volatile CancellationSignal mCancellationSignal = new CancellationSignal();
+    private volatile SyncStatistics mLastStatistics = null;
+
+    // Settings of the currently running synchronization
+    private boolean mShowHidden;
+    private boolean mKeepDeleted;
+    private boolean mSniffFormats;
+    private boolean mReadTags;
+    private boolean mExtractCovers;
+    private int mMaxDepth;
+    private String mIgnorePatterns;
 
     public Synchronizer(Context context) {
-        mContext = context;
-        mPrefManager = PreferenceManager.getDefaultSharedPreferences(context);
+        // Only keep the application context as the synchronization may outlive the activity
+        mContext = context.getApplicationContext();
+        mPrefManager = PreferenceManager.getDefaultSharedPreferences(mContext);
     }
 
     public void setListener(SynchronizationStateListener listener) {
         mListener = listener;
     }
 
+    /*
+     * Get the measurements of the last finished synchronization, null if there was none yet
+     */
+    public SyncStatistics getLastStatistics() {
+        return mLastStatistics;
+    }
+
+    /*
+     * Cancel all running and queued synchronizations of this synchronizer. A synchronization of
+     * the whole library resumes from its last checkpoint the next time.
+     */
+    public void cancel() {
+        CancellationSignal cancellationSignal = mCancellationSignal;
+        mCancellationSignal = new CancellationSignal();
+        cancellationSignal.cancel();
+    }
+
     /*
      * Insert a new directory to the database and add its contained albums and audiofiles accordingly
      */
     public void addDirectory(Directory directory) {
-        directory.insertIntoDB(mContext);
-        updateAlbumTable(directory);
+        CancellationSignal cancellationSignal = mCancellationSignal;
+        sSyncExecutor.execute(() -> {
+            readSettings();
+            directory.insertIntoDB(mContext);
+            ArrayList<Directory> directories = new ArrayList<>();
+            directories.add(directory);
+            ScanControl control = new ScanControl(cancellationSignal, 0, "add_directory");
+            finishRun(control, synchronizeDirectories(directories, false, control), false);
+        });
     }
 
     /*
      * For each directory in the database update albums according to current status of the file system
      */
     public void updateDBTables() {
+        updateDBTables(0);
+    }
+
+    /*
+     * Update the whole library within the given time budget in milliseconds, 0 for no limit.
+     * Once the budget is used up the progress is committed, the listener is notified and the
+     * remaining albums are synchronized in the background.
+     */
+    public void updateDBTables(long timeBudget) {
+        CancellationSignal cancellationSignal = mCancellationSignal;
+        sSyncExecutor.execute(() -> synchronizeLibrary(cancellationSignal, timeBudget));
+    }
+
+    private void synchronizeLibrary(CancellationSignal cancellationSignal, long timeBudget) {
+        if (cancellationSignal.isCanceled()) {
+            return;
+        }
+        readSettings();
+
+        // Album manifests are only valid for the settings they were recorded with
+        int scanFlags = getScanFlags();
+        boolean fullScan = scanFlags != mPrefManager.getInt(mContext.getString(R.string.preference_scan_flags_key), -1);
+
+        // Resume an interrupted synchronization from its checkpoint
+        ScanControl control = new ScanControl(cancellationSignal, timeBudget, "library");
+        control.mRecordCheckpoints = true;
+        control.mScanFlags = scanFlags;
+        if (mPrefManager.getInt(mContext.getString(R.string.preference_scan_checkpoint_flags_key), -1) == scanFlags) {
+            control.mCheckpointDirectoryId = mPrefManager.getLong(mContext.getString(R.string.preference_scan_checkpoint_directory_key), -1);
+            control.mCheckpointAlbumKey = mPrefManager.getString(mContext.getString(R.string.preference_scan_checkpoint_album_key), null);
+        }
+
+        // Directories are synchronized in a stable order, such that the checkpoint stays valid
         ArrayList<Directory> directories = Directory.getDirectories(mContext);
+        Collections.sort(directories, (directory1, directory2) -> Long.compare(directory1.getID(), directory2.getID()));
+        boolean completed = synchronizeDirectories(directories, fullScan, control);
+
+        if (completed) {
+            // Thumbnails of deleted albums and replaced covers are not needed anymore
+            CoverThumbnails.prune(mContext);
+            mPrefManager.edit()
+                    .putInt(mContext.getString(R.string.preference_scan_flags_key), scanFlags)
+                    .putLong(mContext.getString(R.string.preference_last_library_sync_key), System.currentTimeMillis())
+                    .remove(mContext.getString(R.string.preference_scan_checkpoint_flags_key))
+                    .remove(mContext.getString(R.string.preference_scan_checkpoint_directory_key))
+                    .remove(mContext.getString(R.string.preference_scan_checkpoint_album_key))
+                    .apply();
+        }
+        boolean continuing = !completed && !cancellationSignal.isCanceled();
+        finishRun(control, completed, continuing);
+
+        if (continuing) {
+            // The time budget is used up, continue from the checkpoint without a limit
+            sSyncExecutor.execute(() -> synchronizeLibrary(cancellationSignal, 0));
+        }
+    }
+
+    /*
+     * Synchronize only the given albums of a directory, e.g. after changes in the file system have
+     * been observed. The albums are checked even if their manifest did not change, as files might
+     * have been modified in place.
+     */
+    public void updateAlbums(Directory directory, Collection<String> albumPaths) {
+        updateAlbums(Collections.singletonMap(directory, albumPaths));
+    }
+
+    /*
+     * Synchronize the given albums of several directories in a single run, such that albums that
+     * were moved from one directory to another are recognized
+     */
+    public void updateAlbums(Map<Directory, ? extends Collection<String>> albumPaths) {
+        CancellationSignal cancellationSignal = mCancellationSignal;
+        sSyncExecutor.execute(() -> {
+            readSettings();
+            ScanControl control = new ScanControl(cancellationSignal, 0, "albums");
+            ArrayList<DirectoryChanges> directoryChanges = new ArrayList<>();
+            for (Map.Entry<Directory, ? extends Collection<String>> entry : albumPaths.entrySet()) {
+                directoryChanges.add(getAlbumChanges(entry.getKey(), entry.getValue(), control));
+                control.mStatistics.mDirectoryCount++;
+            }
+            finishRun(control, applyChanges(directoryChanges, control), false);
+        });
+    }
+
+    private DirectoryChanges getAlbumChanges(Directory directory, Collection<String> albumPaths, ScanControl control) {
+        HashMap<String, Album> albums = new HashMap<>();
+        for (Album album : Album.getAllAlbumsInDirectory(mContext, directory.getID())) {
+            albums.put(album.getPath(), album);
+        }
+
+        DirectoryChanges changes = new DirectoryChanges(directory);
+        for (String albumPath : albumPaths) {
+            File albumDir = new File(albumPath);
+            Album album = albums.get(albumDir.getAbsolutePath());
+            if (isVisibleDirectory(albumDir)) {
+                changes.addAlbumJob(getAlbumOrderKey(directory, albumDir.getAbsolutePath()), () -> updateAlbum(directory, albumDir.getAbsolutePath(), album, true, control));
+            } else if (album != null) {
+                removeAlbum(changes, album);
+            }
+        }
+        return changes;
+    }
+
+    /*
+     * Synchronize all albums of a single directory
+     */
+    public void updateDirectory(Directory directory) {
+        updateDirectories(Collections.singletonList(directory));
+    }
+
+    /*
+     * Synchronize all albums of the given directories in a single run, such that albums that
+     * were moved from one directory to another are recognized. Albums whose folder still matches
+     * its manifest are skipped.
+     */
+    public void updateDirectories(Collection<Directory> directories) {
+        CancellationSignal cancellationSignal = mCancellationSignal;
+        sSyncExecutor.execute(() -> {
+            readSettings();
+            ScanControl control = new ScanControl(cancellationSignal, 0, "directory");
+            finishRun(control, synchronizeDirectories(new ArrayList<>(directories), false, control), false);
+        });
+    }
+
+    /*
+     * Collect the albums of all directories first, such that the progress can be reported, and
+     * synchronize them afterwards. Returns false if the synchronization was stopped early.
+     */
+    private boolean synchronizeDirectories(ArrayList<Directory> directories, boolean fullScan, ScanControl control) {
+        ArrayList<DirectoryChanges> directoryChanges = new ArrayList<>();
         for (Directory directory : directories) {
-            updateAlbumTable(directory);
+            // Directories before the checkpoint have been committed by an earlier run. That run
+            // stopped before deleting the vanished albums, so only these are collected again.
+            if (directory.getID() < control.mCheckpointDirectoryId) {
+                directoryChanges.add(getVanishedAlbums(directory));
+                continue;
+            }
+            directoryChanges.add(updateAlbumTable(directory, fullScan, control));
+            control.mStatistics.mDirectoryCount++;
+            if (control.mCancellationSignal.isCanceled()) {
+                return false;
+            }
+        }
+        return applyChanges(directoryChanges, control);
+    }
+
+    /*
+     * Collect the albums of the directory whose directories do not exist anymore
+     */
+    private DirectoryChanges getVanishedAlbums(Directory directory) {
+        DirectoryChanges changes = new DirectoryChanges(directory);
+        for (Album album : Album.getAllAlbumsInDirectory(mContext, directory.getID())) {
+            if (!new File(album.getPath()).exists()) {
+                changes.mVanishedAlbums.add(album);
+            }
         }
+        return changes;
     }
 
     /*
-     * Update the album database table if the list of directories in the selected directory does not
-     * match the album table entries
+     * Run the album jobs of all directories in parallel on the worker pool and write the changes
+     * to the database in batches. Returns false if the synchronization was stopped early, all
+     * albums up to the last checkpoint are committed in this case.
      */
-    private void updateAlbumTable(Directory directory) {
-        // Filter to get all subdirectories in a directory
-        boolean showHidden = mPrefManager.getBoolean(mContext.getString(R.string.settings_show_hidden_key), Boolean.getBoolean(mContext.getString(R.string.settings_show_hidden_default)));
-        FilenameFilter filter = (dir, filename) -> {
-            File sel = new File(dir, filename);
-            // Only list files that are readable and directories and not hidden unless corresponding option is set
-            return sel.canRead() && sel.isDirectory() && (showHidden || !sel.getName().startsWith("."));
-        };
+    private boolean applyChanges(ArrayList<DirectoryChanges> directoryChanges, ScanControl control) {
+        int albumCount = 0;
+        for (DirectoryChanges changes : directoryChanges) {
+            albumCount += changes.mAlbumJobs.size();
+        }
+
+        // Moved albums are recognized by the fingerprint of their vanished directory
+        for (DirectoryChanges changes : directoryChanges) {
+            for (Album album : changes.mVanishedAlbums) {
+                control.addVanishedAlbum(album);
+            }
+        }
+
+        int totalAlbumCount = albumCount;
+        SyncStatistics statistics = control.mStatistics;
+        statistics.mAlbumCount += albumCount;
+        AtomicInteger processedAlbums = new AtomicInteger(0);
+        for (DirectoryChanges changes : directoryChanges) {
+            for (Callable<AlbumChanges> albumJob : changes.mAlbumJobs) {
+                changes.mAlbumResults.add(sWorkerPool.submit(() -> {
+                    // Albums that have not been started when the run stops are left for the next run
+                    if (control.isStopped()) {
+                        throw new OperationCanceledException();
+                    }
+                    try {
+                        return albumJob.call();
+                    } finally {
+                        notifyProgress(processedAlbums.incrementAndGet(), totalAlbumCount);
+                    }
+                }));
+            }
+        }
+
+        // Write the changes in album order, such that everything up to the checkpoint is committed
+        for (DirectoryChanges changes : directoryChanges) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            for (long albumId : changes.mDeletedAlbumIds) {
+                Uri uri = ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, albumId);
+                operations.add(ContentProviderOperation.newDelete(uri).build());
+            }
+            statistics.mDeletedAlbumCount += changes.mDeletedAlbumIds.size();
+
+            String lastAlbumKey = null;
+            int batchAlbumCount = 0;
+            boolean stopped = false;
+            for (int i = 0; i < changes.mAlbumResults.size(); i++) {
+                try {
+                    AlbumChanges albumChanges = changes.mAlbumResults.get(i).get();
+                    if (albumChanges != null) {
+                        addAlbumOperations(operations, albumChanges);
+                        if (albumChanges.mIsNewAlbum) statistics.mNewAlbumCount++;
+                        if (albumChanges.mIsMovedAlbum) statistics.mMovedAlbumCount++;
+                        statistics.mRenamedAudioFileCount += albumChanges.mRenamedAudioFileCount;
+                        statistics.mNewAudioFileCount += albumChanges.mNewAudioFiles.size();
+                        statistics.mDeletedAudioFileCount += albumChanges.mDeletedAudioFileIds.size();
+                    } else {
+                        statistics.mUnchangedAlbumCount++;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof OperationCanceledException) {
+                        stopped = true;
+                        break;
+                    }
+                    Log.e(LOG_TAG, "Could not synchronize album", e.getCause());
+                    // The failed album must not be skipped when resuming
+                    control.mRecordCheckpoints = false;
+                }
+
+                lastAlbumKey = changes.mAlbumKeys.get(i);
+                if (++batchAlbumCount == ALBUMS_PER_BATCH) {
+                    commitBatch(changes.mDirectory, operations, lastAlbumKey, control);
+                    operations = new ArrayList<>();
+                    batchAlbumCount = 0;
+                }
+            }
+            commitBatch(changes.mDirectory, operations, lastAlbumKey, control);
+            if (stopped) {
+                return false;
+            }
+        }
+
+        // Delete the vanished albums that did not turn up at a new location
+        for (DirectoryChanges changes : directoryChanges) {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            for (Album album : changes.mVanishedAlbums) {
+                if (!control.isMovedAlbum(album.getID()) && isDeletable(new File(album.getPath()).getName())) {
+                    Uri uri = ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, album.getID());
+                    operations.add(ContentProviderOperation.newDelete(uri).build());
+                }
+            }
+            statistics.mDeletedAlbumCount += operations.size();
+            applyBatch(changes.mDirectory, operations);
+        }
+        return true;
+    }
+
+    /*
+     * Write a batch of changes and record the last album of the batch as checkpoint
+     */
+    private void commitBatch(Directory directory, ArrayList<ContentProviderOperation> operations, String lastAlbumKey, ScanControl control) {
+        if (!applyBatch(directory, operations)) {
+            // Albums after a failed batch must not be skipped when resuming
+            control.mRecordCheckpoints = false;
+        }
+        if (control.mRecordCheckpoints) {
+            mPrefManager.edit()
+                    .putInt(mContext.getString(R.string.preference_scan_checkpoint_flags_key), control.mScanFlags)
+                    .putLong(mContext.getString(R.string.preference_scan_checkpoint_directory_key), directory.getID())
+                    .putString(mContext.getString(R.string.preference_scan_checkpoint_album_key), lastAlbumKey)
+                    .apply();
+        }
+    }
 
+    /*
+     * Determine the albums of the directory that have to be synchronized and the albums whose
+     * directories are missing or hidden
+     */
+    private DirectoryChanges updateAlbumTable(Directory directory, boolean fullScan, ScanControl control) {
         ArrayList<String> newAlbumPaths = new ArrayList<>();
         File dir = new File(directory.getPath());
         if (dir.exists() && dir.isDirectory()) {
             if (directory.getType() == Directory.Type.PARENT_DIR) {
-                // Add all subdirectories if directory is a parent directory
-                String[] subDirArr = dir.list(filter);
-                for (String subDirString : subDirArr) {
-                    String absolutePath = new File(directory.getPath(), subDirString).getAbsolutePath();
-                    newAlbumPaths.add(absolutePath);
+                // Add all visible subdirectories if directory is a parent directory
+                DirectoryListing listing = DirectoryListing.read(dir, mShowHidden, false);
+                if (listing != null) {
+                    for (String subDirString : listing.getSubDirectories()) {
+                        String absolutePath = new File(directory.getPath(), subDirString).getAbsolutePath();
+                        newAlbumPaths.add(absolutePath);
+                    }
                 }
-            } else if (dir.canRead() && (showHidden || !dir.getName().startsWith("."))) {
+            } else if (directory.getType() == Directory.Type.RECURSIVE_DIR) {
+                // Add all folders containing audio files anywhere below the directory
+                AlbumTreeWalker walker = new AlbumTreeWalker(dir, mShowHidden, mSniffFormats, mMaxDepth, mIgnorePatterns);
+                try {
+                    newAlbumPaths.addAll(walker.findAlbums(sWorkerPool, control.mCancellationSignal));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    // Don't delete any albums based on an incomplete walk
+                    return new DirectoryChanges(directory);
+                } catch (OperationCanceledException e) {
+                    return new DirectoryChanges(directory);
+                }
+            } else if (dir.canRead() && (mShowHidden || !dir.getName().startsWith("."))) {
                 // Add directory if it is a subdirectory
                 newAlbumPaths.add(dir.getAbsolutePath());
             }
         }
 
-        LinkedHashMap<String, Album> oldAlbumPaths = new LinkedHashMap<>();
+        // Both sides are merged in the order of their paths
         ArrayList<Album> albums = Album.getAllAlbumsInDirectory(mContext, directory.getID());
-        for (Album album : albums) {
-            String path = album.getPath();
-            oldAlbumPaths.put(path, album);
-        }
-
-        // Insert new albums into the database
-        for (String newAlbumPath : newAlbumPaths) {
-            long id;
-            if (!oldAlbumPaths.containsKey(newAlbumPath)) {
-                String albumTitle = new File(newAlbumPath).getName();
-                Album album = new Album(albumTitle, directory);
-                id = album.insertIntoDB(mContext);
-            } else {
-                Album album = oldAlbumPaths.get(newAlbumPath);
-                id = album.getID();
-
-                // Update cover path
-                String oldCoverPath = album.getRelativeCoverPath();
-                String newCoverPath = album.updateAlbumCover();
-                if (newCoverPath != null && (oldCoverPath == null || !oldCoverPath.equals(newCoverPath))) {
-                    album.updateInDB(mContext);
+        Collections.sort(newAlbumPaths);
+        SortedDiff.sort(albums, Album::getPath);
+        boolean isCheckpointDirectory = directory.getID() == control.mCheckpointDirectoryId && control.mCheckpointAlbumKey != null;
+        DirectoryChanges changes = new DirectoryChanges(directory);
+        // The albums are synchronized in the order of the album list, such that a run that stops
+        // early has filled the top of the list. The order is stable, which keeps the checkpoint
+        // valid between runs.
+        TreeMap<String, Callable<AlbumChanges>> albumJobs = new TreeMap<>();
+        SortedDiff.merge(newAlbumPaths, path -> path, albums, Album::getPath, new SortedDiff.Listener<String, Album>() {
+            @Override
+            public void onInsert(String path) {
+                addAlbumJob(path, null);
+            }
+
+            @Override
+            public void onDelete(Album album) {
+                removeAlbum(changes, album);
+            }
+
+            @Override
+            public void onMatch(String path, Album album) {
+                addAlbumJob(path, album);
+            }
+
+            private void addAlbumJob(String path, Album album) {
+                String albumKey = getAlbumOrderKey(directory, path);
+                // Albums up to the checkpoint have been committed by an earlier run
+                if (isCheckpointDirectory && albumKey.compareTo(control.mCheckpointAlbumKey) <= 0) {
+                    return;
                 }
+                albumJobs.put(albumKey, () -> updateAlbum(directory, path, album, fullScan, control));
+            }
+        });
+        for (Map.Entry<String, Callable<AlbumChanges>> albumJob : albumJobs.entrySet()) {
+            changes.addAlbumJob(albumJob.getKey(), albumJob.getValue());
+        }
+        return changes;
+    }
+
+    /*
+     * Delete missing or hidden album directories from the database. Albums whose directory does
+     * not exist anymore might have been moved, so they are only deleted at the end of the run if
+     * they did not turn up at a new location.
+     */
+    private void removeAlbum(DirectoryChanges changes, Album album) {
+        File albumDir = new File(album.getPath());
+        if (!albumDir.exists()) {
+            changes.mVanishedAlbums.add(album);
+        } else if (isDeletable(albumDir.getName())) {
+            changes.mDeletedAlbumIds.add(album.getID());
+        }
+    }
+
+    /*
+     * Missing albums and audio files are only kept in the database if the option is set, hidden
+     * ones only if hidden files are shown
+     */
+    private boolean isDeletable(String name) {
+        return !mKeepDeleted || (!mShowHidden && name.startsWith("."));
+    }
+
+    /*
+     * Determine the changes of a single album. Returns null for albums whose directory did not
+     * change since the last synchronization.
+     */
+    private AlbumChanges updateAlbum(Directory directory, String albumPath, Album album, boolean fullScan, ScanControl control) {
+        File albumDir = new File(albumPath);
+        boolean isNewAlbum = album == null;
+        boolean isMovedAlbum = false;
+
+        // The album directory is listed only once, the manifest check, the cover detection and
+        // the audio files all use this listing
+        DirectoryListing listing = DirectoryListing.read(albumDir, mShowHidden, mSniffFormats);
+        HashMap<String, String> fingerprints = new HashMap<>();
+        if (isNewAlbum) {
+            // A new album directory might be a moved or renamed one, which keeps its progress
+            album = listing != null ? claimMovedAlbum(listing, fingerprints, control) : null;
+            isMovedAlbum = album != null;
+            if (isMovedAlbum) {
+                album.moveTo(directory, getAlbumTitle(directory, albumDir));
+                isNewAlbum = false;
+            } else {
+                album = new Album(getAlbumTitle(directory, albumDir), directory, null);
+            }
+        } else if (!fullScan && isAlbumUnchanged(album, listing)) {
+            // Skip albums whose directory did not change since the last synchronization
+            return null;
+        }
 
-                oldAlbumPaths.remove(newAlbumPath);
+        AlbumChanges changes = new AlbumChanges(album, isNewAlbum, isMovedAlbum);
+        if (listing != null) {
+            // Update cover path, the candidates are only ranked again if the folder changed
+            album.updateAlbumCover(listing);
+        }
+        if (updateAudioFileTable(changes, listing, fingerprints, control.mCancellationSignal)) {
+            if (mExtractCovers) {
+                updateEmbeddedCover(album, listing, fingerprints);
             }
-            updateAudioFileTable(newAlbumPath, id);
+            album.setManifest(listing.getLastModified(), listing.getEntryCount());
+        } else {
+            // Make sure the album is checked again during the next synchronization
+            album.setManifest(0, -1);
         }
+        return changes;
+    }
 
-        // Delete missing or hidden directories from the database
-        boolean keepDeleted = mPrefManager.getBoolean(mContext.getString(R.string.settings_keep_deleted_key), Boolean.getBoolean(mContext.getString(R.string.settings_keep_deleted_default)));
-        for (String path : oldAlbumPaths.keySet()) {
-            String directoryName = new File(path).getName();
-            if (!keepDeleted || (!showHidden && directoryName.startsWith("."))) {
-                // Delete the album in the albums table
-                long id = oldAlbumPaths.get(path).getID();
-                Uri uri = ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, id);
-                mContext.getContentResolver().delete(uri, null, null);
+    /*
+     * Store the thumbnails of the cover embedded in the first audio file of the album. The cover
+     * is only extracted again if the first audio file changed.
+     */
+    private void updateEmbeddedCover(Album album, DirectoryListing listing, HashMap<String, String> fingerprints) {
+        DirectoryListing.Entry firstEntry = null;
+        for (DirectoryListing.Entry entry : listing.getAudioFiles()) {
+            if (firstEntry == null || entry.getName().compareTo(firstEntry.getName()) < 0) {
+                firstEntry = entry;
             }
         }
-        if (mListener != null) {
-            mListener.onSynchronizationFinished();
+        String fingerprint = firstEntry != null ? getFingerprint(listing, firstEntry, fingerprints) : null;
+        if (fingerprint == null) {
+            album.setEmbeddedCover(null);
+        } else if (!fingerprint.equals(album.getEmbeddedCover()) || !CoverThumbnails.exists(mContext, fingerprint)) {
+            File audioFile = new File(listing.getDirectory(), firstEntry.getName());
+            album.setEmbeddedCover(CoverThumbnails.create(mContext, audioFile, fingerprint) ? fingerprint : null);
         }
     }
 
+    /*
+     * Find the vanished album with the same fingerprint as the new album directory. The
+     * fingerprints are only taken if an album vanished during this run. Only the content of the
+     * audio files counts, so an album whose files were renamed as well is still recognized.
+     */
+    private Album claimMovedAlbum(DirectoryListing listing, HashMap<String, String> fingerprints, ScanControl control) {
+        if (!control.hasVanishedAlbums()) {
+            return null;
+        }
+
+        ArrayList<String> fileFingerprints = new ArrayList<>();
+        for (DirectoryListing.Entry entry : listing.getAudioFiles()) {
+            fileFingerprints.add(getFingerprint(listing, entry, fingerprints));
+        }
+        String albumFingerprint = FileFingerprint.ofAlbum(fileFingerprints);
+        return albumFingerprint != null ? control.claimVanishedAlbum(albumFingerprint) : null;
+    }
 
     /*
-     * Update the audiofiles table if the list of audio files in the album directory does not
-     * match the audiofiles table entries
+     * Get the fingerprint of an audio file in the listing, every file is read at most once
      */
-     private void updateAudioFileTable(String albumPath, long albumId) {
-        // Get all audio files in the album.
-        FilenameFilter filter = (dir, filename) -> {
-            File sel = new File(dir, filename);
+    private String getFingerprint(DirectoryListing listing, DirectoryListing.Entry entry, HashMap<String, String> fingerprints) {
+        if (fingerprints.containsKey(entry.getName())) {
+            return fingerprints.get(entry.getName());
+        }
+        String fingerprint = FileFingerprint.ofFile(new File(listing.getDirectory(), entry.getName()), entry.getSize());
+        fingerprints.put(entry.getName(), fingerprint);
+        return fingerprint;
+    }
 
-            // Don't show files starting with a dot (hidden files) unless the option is set
-            boolean showHidden = mPrefManager.getBoolean(mContext.getString(R.string.settings_show_hidden_key), Boolean.getBoolean(mContext.getString(R.string.settings_show_hidden_default)));
-            if (!showHidden && sel.getName().startsWith(".")) {
-                return false;
+    /*
+     * Determine the audio files that have to be inserted or deleted if the list of audio files in
+     * the album directory does not match the audiofiles table entries
+     */
+    private boolean updateAudioFileTable(AlbumChanges changes, DirectoryListing listing, HashMap<String, String> fingerprints, CancellationSignal cancellationSignal) {
+        if (listing == null) return false;
+        Album album = changes.mAlbum;
+
+        // Classifying the entries stats every file, stop before if the synchronization was cancelled
+        cancellationSignal.throwIfCanceled();
+
+        // A new album does not have any audio files in the database yet. The progress is not
+        // written by the synchronization, so the progress store is not consulted.
+        ArrayList<AudioFile> audioFiles = changes.mIsNewAlbum ? new ArrayList<>() : AudioFile.getAllAudioFilesInAlbum(mContext, album.getID(), null, null);
+
+        // The listing only contains audio files and skips hidden files unless the option is set
+        ArrayList<DirectoryListing.Entry> entries = new ArrayList<>(listing.getAudioFiles());
+        ArrayList<DirectoryListing.Entry> addedEntries = new ArrayList<>();
+        ArrayList<AudioFile> removedAudioFiles = new ArrayList<>();
+        ArrayList<String> fileFingerprints = new ArrayList<>();
+        SortedDiff.sort(entries, DirectoryListing.Entry::getName);
+        SortedDiff.sort(audioFiles, AudioFile::getTitle);
+        SortedDiff.merge(entries, DirectoryListing.Entry::getName, audioFiles, AudioFile::getTitle, new SortedDiff.Listener<DirectoryListing.Entry, AudioFile>() {
+            @Override
+            public void onInsert(DirectoryListing.Entry entry) {
+                addedEntries.add(entry);
+            }
+
+            @Override
+            public void onDelete(AudioFile audioFile) {
+                removedAudioFiles.add(audioFile);
+            }
+
+            @Override
+            public void onMatch(DirectoryListing.Entry entry, AudioFile audioFile) {
+                // Audio files are identified by their title, only a missing or outdated
+                // fingerprint and missing tags have to be updated
+                String fingerprint = audioFile.getFingerprint();
+                boolean isUpdated = false;
+                if (!FileFingerprint.matchesSize(fingerprint, entry.getSize())) {
+                    fingerprint = getFingerprint(listing, entry, fingerprints);
+                    if (audioFile.getFingerprint() != null) {
+                        // The file was modified, so its tags might have changed as well
+                        audioFile.invalidateTags();
+                    }
+                    audioFile.setFingerprint(fingerprint);
+                    isUpdated = true;
+                }
+                if (mReadTags && !audioFile.areTagsRead()) {
+                    audioFile.readTags();
+                    isUpdated = true;
+                }
+                if (isUpdated) {
+                    changes.mUpdatedAudioFiles.add(audioFile);
+                }
+                fingerprints.put(entry.getName(), fingerprint);
+                fileFingerprints.add(fingerprint);
+            }
+        });
+
+        // Renamed files are recognized by their fingerprint and keep their progress and bookmarks
+        HashMap<String, AudioFile> removedFingerprints = new HashMap<>();
+        for (AudioFile audioFile : removedAudioFiles) {
+            if (audioFile.getFingerprint() != null) {
+                removedFingerprints.put(audioFile.getFingerprint(), audioFile);
+            }
+        }
+        HashSet<Long> renamedAudioFileIds = new HashSet<>();
+        for (DirectoryListing.Entry entry : addedEntries) {
+            String fingerprint = getFingerprint(listing, entry, fingerprints);
+            AudioFile audioFile = fingerprint != null ? removedFingerprints.remove(fingerprint) : null;
+            if (audioFile != null) {
+                audioFile.setTitle(entry.getName());
+                changes.mUpdatedAudioFiles.add(audioFile);
+                renamedAudioFileIds.add(audioFile.getID());
+            } else {
+                // Collect new files that have to be inserted into the database
+                AudioFile newAudioFile = new AudioFile(entry.getName(), album, entry.getFormat(), fingerprint);
+                if (mReadTags) {
+                    newAudioFile.readTags();
+                }
+                changes.mNewAudioFiles.add(newAudioFile);
+            }
+            fileFingerprints.add(fingerprint);
+        }
+        changes.mRenamedAudioFileCount = renamedAudioFileIds.size();
+
+        // Collect missing or hidden audio files that have to be deleted from the database
+        for (AudioFile audioFile : removedAudioFiles) {
+            if (!renamedAudioFileIds.contains(audioFile.getID()) && isDeletable(audioFile.getTitle())) {
+                changes.mDeletedAudioFileIds.add(audioFile.getID());
             }
+        }
+
+        album.setFingerprint(FileFingerprint.ofAlbum(fileFingerprints));
+        return true;
+    }
 
-            // Only list files that are readable and audio files
-            String[] supportedFormats = {".mp3", ".wma", ".ogg", ".wav", ".flac", ".m4a", ".m4b", ".aac", ".3gp", ".gsm", ".mid", ".mkv", ".opus"};
-            for (String format : supportedFormats) {
-                if (sel.getName().endsWith(format)) return true;
+    /*
+     * Append the operations that write the changes of an album to the database
+     */
+    private void addAlbumOperations(ArrayList<ContentProviderOperation> operations, AlbumChanges changes) {
+        Album album = changes.mAlbum;
+        ContentValues albumValues = album.getContentValues();
+        int albumIndex = operations.size();
+        if (changes.mIsNewAlbum) {
+            operations.add(ContentProviderOperation.newInsert(BookContract.AlbumEntry.CONTENT_URI)
+                    .withValues(albumValues)
+                    .build());
+        } else {
+            // Don't overwrite the last played track, it might have changed during the synchronization
+            albumValues.remove(BookContract.AlbumEntry.COLUMN_LAST_PLAYED);
+            Uri uri = ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, album.getID());
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValues(albumValues)
+                    .build());
+        }
+
+        for (AudioFile audioFile : changes.mNewAudioFiles) {
+            ContentProviderOperation.Builder builder = ContentProviderOperation.newInsert(BookContract.AudioEntry.CONTENT_URI)
+                    .withValues(audioFile.getContentValues());
+            if (changes.mIsNewAlbum) {
+                // The id of a new album is only known once the album has been inserted
+                builder.withValueBackReference(BookContract.AudioEntry.COLUMN_ALBUM, albumIndex);
             }
+            operations.add(builder.build());
+        }
+
+        for (AudioFile audioFile : changes.mUpdatedAudioFiles) {
+            // Only touch the identifying columns and tags, the progress might have changed in the meantime
+            ContentValues values = new ContentValues();
+            values.put(BookContract.AudioEntry.COLUMN_TITLE, audioFile.getTitle());
+            values.put(BookContract.AudioEntry.COLUMN_FINGERPRINT, audioFile.getFingerprint());
+            audioFile.putTagValues(values);
+            Uri uri = ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, audioFile.getID());
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValues(values)
+                    .build());
+        }
+
+        for (long audioFileId : changes.mDeletedAudioFileIds) {
+            Uri uri = ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, audioFileId);
+            operations.add(ContentProviderOperation.newDelete(uri).build());
+        }
+    }
+
+    /*
+     * Write the changes of a directory to the database in a single transaction
+     */
+    private boolean applyBatch(Directory directory, ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            return true;
+        }
+        try {
+            mContext.getContentResolver().applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+            return true;
+        } catch (RemoteException | OperationApplicationException | IllegalArgumentException e) {
+            Log.e(LOG_TAG, "Could not write changes of directory " + directory.getPath(), e);
+            String message = mContext.getResources().getString(R.string.synchronize_directory_error, directory.getPath());
+            mMainHandler.post(() -> Toast.makeText(mContext, message, Toast.LENGTH_SHORT).show());
             return false;
-        };
+        }
+    }
 
-        // Get all files in the album directory.
-        String[] fileList;
-        File albumDir = new File(albumPath);
+    /*
+     * Only directories that are readable and not hidden unless corresponding option is set can
+     * be albums
+     */
+    private boolean isVisibleDirectory(File dir) {
+        return dir.canRead() && dir.isDirectory() && (mShowHidden || !dir.getName().startsWith("."));
+    }
+
+    /*
+     * Get the key that orders the albums of a directory like the album list, i.e. by the sort key
+     * of their titles. The path tells albums with equal sort keys apart.
+     */
+    private String getAlbumOrderKey(Directory directory, String albumPath) {
+        return SortKey.of(getAlbumTitle(directory, new File(albumPath))) + '\0' + albumPath;
+    }
+
+    /*
+     * Albums of recursive directories are titled with their path relative to the directory, such
+     * that nested albums like "Book/CD1" and "Book/CD2" can be told apart
+     */
+    private String getAlbumTitle(Directory directory, File albumDir) {
+        if (directory.getType() == Directory.Type.RECURSIVE_DIR) {
+            String directoryPath = new File(directory.getPath()).getAbsolutePath();
+            String albumPath = albumDir.getAbsolutePath();
+            if (albumPath.startsWith(directoryPath + File.separator)) {
+                return albumPath.substring(directoryPath.length() + 1);
+            }
+        }
+        return albumDir.getName();
+    }
+
+    /*
+     * Check whether the album directory still matches the manifest stored with the album. A
+     * directory's modification time changes whenever an entry is added, removed or renamed, the
+     * entry count guards against file systems with coarse time stamps.
+     */
+    private boolean isAlbumUnchanged(Album album, DirectoryListing listing) {
+        return listing != null && album.getDirMtime() != 0
+                && listing.getLastModified() == album.getDirMtime()
+                && listing.getEntryCount() == album.getEntryCount();
+    }
+
+    /*
+     * Get the settings that influence the result of a synchronization
+     */
+    private int getScanFlags() {
+        int flags = 0;
+        if (mShowHidden) flags |= 1;
+        if (mKeepDeleted) flags |= 1 << 1;
+        if (mSniffFormats) flags |= 1 << 2;
+        if (mReadTags) flags |= 1 << 3;
+        if (mExtractCovers) flags |= 1 << 4;
+        flags |= ALBUM_FINGERPRINT_VERSION << 5;
+        return flags;
+    }
 
-        if (albumDir.exists()) {
-            fileList = albumDir.list(filter);
+    /*
+     * Read the settings once per synchronization instead of once per file. The worker threads
+     * see the values as they are only started afterwards.
+     */
+    private void readSettings() {
+        mShowHidden = mPrefManager.getBoolean(mContext.getString(R.string.settings_show_hidden_key), Boolean.getBoolean(mContext.getString(R.string.settings_show_hidden_default)));
+        mKeepDeleted = mPrefManager.getBoolean(mContext.getString(R.string.settings_keep_deleted_key), Boolean.getBoolean(mContext.getString(R.string.settings_keep_deleted_default)));
+        mSniffFormats = mPrefManager.getBoolean(mContext.getString(R.string.settings_sniff_formats_key), Boolean.getBoolean(mContext.getString(R.string.settings_sniff_formats_default)));
+        // Tags are only needed if the titles are taken from the metadata
+        mReadTags = mPrefManager.getBoolean(mContext.getString(R.string.settings_title_from_metadata_key), Boolean.getBoolean(mContext.getString(R.string.settings_title_from_metadata_default)));
+        mExtractCovers = mPrefManager.getBoolean(mContext.getString(R.string.settings_cover_from_metadata_key), Boolean.getBoolean(mContext.getString(R.string.settings_cover_from_metadata_default)));
+        mIgnorePatterns = mPrefManager.getString(mContext.getString(R.string.settings_ignore_patterns_key), mContext.getString(R.string.settings_ignore_patterns_default));
+        String maxDepth = mPrefManager.getString(mContext.getString(R.string.settings_max_depth_key), mContext.getString(R.string.settings_max_depth_default));
+        try {
+            mMaxDepth = Integer.parseInt(maxDepth);
+        } catch (NumberFormatException e) {
+            mMaxDepth = Integer.parseInt(mContext.getString(R.string.settings_max_depth_default));
+        }
+    }
+
+    /*
+     * Report the progress of the synchronization on the main thread
+     */
+    private void notifyProgress(int processedAlbums, int albumCount) {
+        mMainHandler.post(() -> {
+            if (mListener != null) {
+                mListener.onSynchronizationProgress(processedAlbums, albumCount);
+            }
+        });
+    }
+
+    /*
+     * Record the measurements of a finished run and notify the listener, either that the
+     * synchronization is finished or that it continues in the background
+     */
+    private void finishRun(ScanControl control, boolean completed, boolean continuing) {
+        control.mStatistics.finish(completed);
+        mLastStatistics = control.mStatistics;
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, control.mStatistics.toJson());
+        }
+        if (continuing) {
+            notifyContinuing();
         } else {
-            fileList = new String[]{};
+            notifyFinished();
+        }
+    }
+
+    /*
+     * Report on the main thread that the time budget is used up and the remaining albums are
+     * synchronized in the background
+     */
+    private void notifyContinuing() {
+        mMainHandler.post(() -> {
+            if (mListener != null) {
+                mListener.onSynchronizationContinuing();
+            }
+        });
+    }
+
+    /*
+     * Report the end of the synchronization on the main thread
+     */
+    private void notifyFinished() {
+        mMainHandler.post(() -> {
+            if (mListener != null) {
+                mListener.onSynchronizationFinished();
+            }
+        });
+    }
+
+    /*
+     * Create worker threads that run with background priority, such that the synchronization does
+     * not compete with the UI thread
+     */
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, name + "-" + threadCount.incrementAndGet());
+    }
+
+    // Changes of the albums in a directory
+    private static class DirectoryChanges {
+        private final Directory mDirectory;
+        // Order keys of the albums, see getAlbumOrderKey
+        private final ArrayList<String> mAlbumKeys = new ArrayList<>();
+        private final ArrayList<Callable<AlbumChanges>> mAlbumJobs = new ArrayList<>();
+        private final ArrayList<Future<AlbumChanges>> mAlbumResults = new ArrayList<>();
+        private final ArrayList<Long> mDeletedAlbumIds = new ArrayList<>();
+        // Albums whose directory does not exist anymore
+        private final ArrayList<Album> mVanishedAlbums = new ArrayList<>();
+
+        DirectoryChanges(Directory directory) {
+            mDirectory = directory;
         }
 
-        if (fileList == null) return;
+        void addAlbumJob(String albumKey, Callable<AlbumChanges> albumJob) {
+            mAlbumKeys.add(albumKey);
+            mAlbumJobs.add(albumJob);
+        }
+    }
+
+    // State of a single synchronization run, which stops once it is cancelled or its time budget
+    // is used up. Runs over the whole library record a checkpoint after every committed batch.
+    private static class ScanControl {
+        private final CancellationSignal mCancellationSignal;
+        private final long mDeadline;
+        private final SyncStatistics mStatistics;
+        private boolean mRecordCheckpoints = false;
+        private int mScanFlags = 0;
+        // Last committed album of an earlier run, everything up to it is skipped
+        private long mCheckpointDirectoryId = -1;
+        private String mCheckpointAlbumKey = null;
+        // Vanished albums by their fingerprint and the ones claimed by a new album directory
+        private final HashMap<String, Album> mVanishedAlbums = new HashMap<>();
+        private final HashSet<Long> mMovedAlbumIds = new HashSet<>();
+        // Fingerprints of several vanished albums, e.g. copies of the same album, which cannot
+        // be told apart
+        private final HashSet<String> mAmbiguousFingerprints = new HashSet<>();
+
+        ScanControl(CancellationSignal cancellationSignal, long timeBudget, String run) {
+            mCancellationSignal = cancellationSignal;
+            mDeadline = timeBudget > 0 ? SystemClock.uptimeMillis() + timeBudget : 0;
+            mStatistics = new SyncStatistics(run);
+        }
 
-        ArrayList<AudioFile> audioFiles = AudioFile.getAllAudioFilesInAlbum(mContext, albumId, null);
-        LinkedHashMap<String, AudioFile> audioTitles = new LinkedHashMap<>();
-         for (AudioFile audioFile : audioFiles) {
-             audioTitles.put(audioFile.getTitle(), audioFile);
-         }
+        boolean isStopped() {
+            return mCancellationSignal.isCanceled() || (mDeadline > 0 && SystemClock.uptimeMillis() >= mDeadline);
+        }
 
-         // Insert new files into the database
-        String errorString = null;
-        for (String audioFileName : fileList) {
-            if (!audioTitles.containsKey(audioFileName)) {
-                AudioFile audioFile = new AudioFile(mContext, audioFileName, albumId);
-                long id = audioFile.insertIntoDB(mContext);
-                if (id == -1) errorString = albumPath + "/" + audioFileName;
+        synchronized void addVanishedAlbum(Album album) {
+            String fingerprint = album.getFingerprint();
+            if (fingerprint == null || mAmbiguousFingerprints.contains(fingerprint)) {
+                return;
+            }
+            if (mVanishedAlbums.remove(fingerprint) != null) {
+                // None of the albums is recognized as moved, they are deleted instead
+                mAmbiguousFingerprints.add(fingerprint);
             } else {
-                audioTitles.remove(audioFileName);
+                mVanishedAlbums.put(fingerprint, album);
             }
         }
-        if (errorString != null) {
-            errorString = mContext.getResources().getString(R.string.audio_file_error, errorString);
-            Toast.makeText(mContext.getApplicationContext(), errorString, Toast.LENGTH_SHORT).show();
-            return;
+
+        synchronized boolean hasVanishedAlbums() {
+            return !mVanishedAlbums.isEmpty();
         }
 
-        // Delete missing or hidden audio files from the database
-        boolean keepDeleted = mPrefManager.getBoolean(mContext.getString(R.string.settings_keep_deleted_key), Boolean.getBoolean(mContext.getString(R.string.settings_keep_deleted_default)));
-        boolean showHidden = mPrefManager.getBoolean(mContext.getString(R.string.settings_show_hidden_key), Boolean.getBoolean(mContext.getString(R.string.settings_show_hidden_default)));
-        for (String title : audioTitles.keySet()) {
-            if (!keepDeleted || (!showHidden && title.startsWith("."))) {
-                long id = audioTitles.get(title).getID();
-                Uri uri = ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, id);
-                mContext.getContentResolver().delete(uri, null, null);
+        synchronized Album claimVanishedAlbum(String fingerprint) {
+            Album album = mVanishedAlbums.remove(fingerprint);
+            if (album != null) {
+                mMovedAlbumIds.add(album.getID());
             }
+            return album;
+        }
+
+        synchronized boolean isMovedAlbum(long albumId) {
+            return mMovedAlbumIds.contains(albumId);
+        }
+    }
+
+    // Changes of a single album and its audio files
+    private static class AlbumChanges {
+        private final Album mAlbum;
+        private final boolean mIsNewAlbum;
+        private final boolean mIsMovedAlbum;
+        private final ArrayList<AudioFile> mNewAudioFiles = new ArrayList<>();
+        // Audio files that were renamed or whose fingerprint changed
+        private final ArrayList<AudioFile> mUpdatedAudioFiles = new ArrayList<>();
+        private final ArrayList<Long> mDeletedAudioFileIds = new ArrayList<>();
+        private int mRenamedAudioFileCount = 0;
+
+        AlbumChanges(Album album, boolean isNewAlbum, boolean isMovedAlbum) {
+            mAlbum = album;
+            mIsNewAlbum = isNewAlbum;
+            mIsMovedAlbum = isMovedAlbum;
         }
     }
 }
@@ -1,5 +1,7 @@
 package my.android.audiobook.listeners;
 
 public interface SynchronizationStateListener {
+    void onSynchronizationProgress(int processedAlbums, int albumCount);
+    void onSynchronizationContinuing();
     void onSynchronizationFinished();
 }
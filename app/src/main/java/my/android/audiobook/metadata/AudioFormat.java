@@ -0,0 +1,45 @@
+package my.android.audiobook.metadata;
+
+/**
+ * Audio formats supported by the library together with their file extensions
+ */
+
+public enum AudioFormat {
+    MP3(".mp3"),
+    WMA(".wma"),
+    OGG(".ogg"),
+    WAV(".wav"),
+    FLAC(".flac"),
+    M4A(".m4a"),
+    M4B(".m4b"),
+    AAC(".aac"),
+    THREE_GP(".3gp"),
+    GSM(".gsm"),
+    MID(".mid"),
+    MKV(".mkv"),
+    OPUS(".opus");
+
+    private final String mExtension;
+
+    AudioFormat(String extension) {
+        mExtension = extension;
+    }
+
+    public String getExtension() {
+        return mExtension;
+    }
+
+    /*
+     * Return the format with the given name or null if there is no such format
+     */
+    public static AudioFormat fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package my.android.audiobook.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Determines the audio format of a file from its extension or, for misnamed files, from the
+ * magic bytes at the start of the file
+ */
+
+public final class AudioFormatRegistry {
+    // Number of bytes needed to recognize all supported formats by their content
+    private static final int SNIFF_LENGTH = 36;
+
+    // Formats bucketed by the length of their extension (including the dot), such that a lookup
+    // only compares the extension against a handful of candidates
+    private static final AudioFormat[][] EXTENSION_TABLE;
+
+    static {
+        int maxLength = 0;
+        for (AudioFormat format : AudioFormat.values()) {
+            maxLength = Math.max(maxLength, format.getExtension().length());
+        }
+        int[] bucketSizes = new int[maxLength + 1];
+        for (AudioFormat format : AudioFormat.values()) {
+            bucketSizes[format.getExtension().length()]++;
+        }
+        EXTENSION_TABLE = new AudioFormat[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            EXTENSION_TABLE[length] = new AudioFormat[bucketSizes[length]];
+            bucketSizes[length] = 0;
+        }
+        for (AudioFormat format : AudioFormat.values()) {
+            int length = format.getExtension().length();
+            EXTENSION_TABLE[length][bucketSizes[length]++] = format;
+        }
+    }
+
+    private AudioFormatRegistry() {
+    }
+
+    /*
+     * Return the format belonging to the extension of the file name, ignoring case, or null if
+     * the extension is not supported. Does not allocate any memory.
+     */
+    public static AudioFormat getFormatFromName(String fileName) {
+        int dotIndex = fileName.lastIndexOf('.');
+        if (dotIndex < 0) {
+            return null;
+        }
+        int length = fileName.length() - dotIndex;
+        if (length >= EXTENSION_TABLE.length) {
+            return null;
+        }
+        for (AudioFormat format : EXTENSION_TABLE[length]) {
+            if (fileName.regionMatches(true, dotIndex, format.getExtension(), 0, length)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Return the format of the file. The content of the file is only inspected if sniffing is
+     * enabled and the extension is unknown.
+     */
+    public static AudioFormat getFormat(File file, boolean sniffContent) {
+        AudioFormat format = getFormatFromName(file.getName());
+        if (format == null && sniffContent && file.isFile()) {
+            format = sniffFormat(file);
+        }
+        return format;
+    }
+
+    /*
+     * Determine the format from the magic bytes at the start of the file. Returns null if the
+     * content does not match any supported format.
+     */
+    public static AudioFormat sniffFormat(File file) {
+        byte[] header = new byte[SNIFF_LENGTH];
+        int length;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            length = DurationParser.readBuffer(randomAccessFile, header);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing left to do with the file
+                }
+            }
+        }
+        return sniffFormat(header, length);
+    }
+
+    /*
+     * Determine the format from the first bytes of a file
+     */
+    static AudioFormat sniffFormat(byte[] header, int length) {
+        if (length < 4) {
+            return null;
+        }
+        int b0 = header[0] & 0xFF;
+        int b1 = header[1] & 0xFF;
+
+        if (DurationParser.matches(header, 0, "OggS")) {
+            // The identification header of the first packet follows the 28 byte page header
+            return length >= 36 && DurationParser.matches(header, 28, "OpusHead") ? AudioFormat.OPUS : AudioFormat.OGG;
+        } else if (DurationParser.matches(header, 0, "fLaC")) {
+            return AudioFormat.FLAC;
+        } else if (length >= 12 && DurationParser.matches(header, 0, "RIFF") && DurationParser.matches(header, 8, "WAVE")) {
+            return AudioFormat.WAV;
+        } else if (length >= 12 && DurationParser.matches(header, 4, "ftyp")) {
+            if (DurationParser.matches(header, 8, "M4B")) {
+                return AudioFormat.M4B;
+            } else if (DurationParser.matches(header, 8, "3gp")) {
+                return AudioFormat.THREE_GP;
+            }
+            return AudioFormat.M4A;
+        } else if (DurationParser.matches(header, 0, "MThd")) {
+            return AudioFormat.MID;
+        } else if (b0 == 0x1A && b1 == 0x45 && (header[2] & 0xFF) == 0xDF && (header[3] & 0xFF) == 0xA3) {
+            // EBML header of Matroska files
+            return AudioFormat.MKV;
+        } else if (b0 == 0x30 && b1 == 0x26 && (header[2] & 0xFF) == 0xB2 && (header[3] & 0xFF) == 0x75) {
+            // ASF header object of WMA files
+            return AudioFormat.WMA;
+        } else if (DurationParser.matches(header, 0, "ID3")) {
+            return AudioFormat.MP3;
+        } else if (b0 == 0xFF && (b1 & 0xF6) == 0xF0) {
+            // ADTS frame, MPEG audio frames with layer bits 00 do not exist
+            return AudioFormat.AAC;
+        } else if (b0 == 0xFF && (b1 & 0xE0) == 0xE0 && (b1 & 0x06) != 0) {
+            return AudioFormat.MP3;
+        }
+        return null;
+    }
+}
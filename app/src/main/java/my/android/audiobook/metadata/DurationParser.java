@@ -0,0 +1,85 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Base class of the parsers that read the duration of an audio file from the headers of its
+ * container without decoding any audio data
+ */
+
+abstract class DurationParser {
+    static final long UNKNOWN_DURATION = -1;
+
+    /*
+     * Return the duration of the audio file in milliseconds or UNKNOWN_DURATION if the headers do
+     * not contain enough information
+     */
+    abstract long parseDuration(RandomAccessFile file) throws IOException;
+
+    /*
+     * Read as many bytes as available into the buffer and return their number
+     */
+    static int readBuffer(RandomAccessFile file, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int count = file.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                break;
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    /*
+     * Return the position of the first byte behind the ID3v2 tags at the start of the file
+     */
+    static long skipId3v2Tags(RandomAccessFile file) throws IOException {
+        long position = 0;
+        byte[] header = new byte[10];
+        while (true) {
+            file.seek(position);
+            if (readBuffer(file, header) < header.length || !matches(header, 0, "ID3")) {
+                return position;
+            }
+            // The tag size is stored as synchsafe integer and does not include header and footer
+            int size = (header[6] & 0x7F) << 21 | (header[7] & 0x7F) << 14 | (header[8] & 0x7F) << 7 | (header[9] & 0x7F);
+            boolean hasFooter = (header[5] & 0x10) != 0;
+            position += header.length + size + (hasFooter ? 10 : 0);
+        }
+    }
+
+    /*
+     * Check whether the buffer contains the given ASCII identifier at the offset
+     */
+    static boolean matches(byte[] buffer, int offset, String identifier) {
+        if (offset < 0 || offset + identifier.length() > buffer.length) {
+            return false;
+        }
+        for (int i = 0; i < identifier.length(); i++) {
+            if (buffer[offset + i] != (byte) identifier.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int readUInt16LE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    static long readUInt32LE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFFL) | (buffer[offset + 1] & 0xFFL) << 8
+                | (buffer[offset + 2] & 0xFFL) << 16 | (buffer[offset + 3] & 0xFFL) << 24;
+    }
+
+    static long readUInt32BE(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFFL) << 24 | (buffer[offset + 1] & 0xFFL) << 16
+                | (buffer[offset + 2] & 0xFFL) << 8 | (buffer[offset + 3] & 0xFFL);
+    }
+
+    static long readInt64LE(byte[] buffer, int offset) {
+        return readUInt32LE(buffer, offset) | readUInt32LE(buffer, offset + 4) << 32;
+    }
+}
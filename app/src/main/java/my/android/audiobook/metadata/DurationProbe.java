@@ -0,0 +1,84 @@
+package my.android.audiobook.metadata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Determines the duration of audio files by reading only the headers of their containers. Only
+ * depends on plain Java such that it can be used outside of the Android framework.
+ */
+
+public final class DurationProbe {
+    public static final long UNKNOWN_DURATION = DurationParser.UNKNOWN_DURATION;
+
+    private static final DurationParser MP3_PARSER = new Mp3DurationParser();
+    private static final DurationParser MP4_PARSER = new Mp4DurationParser();
+    private static final DurationParser FLAC_PARSER = new FlacDurationParser();
+    private static final DurationParser OGG_PARSER = new OggDurationParser();
+    private static final DurationParser WAV_PARSER = new WavDurationParser();
+
+    private DurationProbe() {
+    }
+
+    /*
+     * Return the duration of the audio file in milliseconds or UNKNOWN_DURATION if the format is
+     * not supported or the headers could not be parsed
+     */
+    public static long probeDuration(File file) {
+        return probeDuration(file, AudioFormatRegistry.getFormatFromName(file.getName()));
+    }
+
+    /*
+     * Return the duration of an audio file whose format is already known
+     */
+    public static long probeDuration(File file, AudioFormat format) {
+        DurationParser parser = getParser(format);
+        if (parser == null) {
+            return UNKNOWN_DURATION;
+        }
+
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            long duration = parser.parseDuration(randomAccessFile);
+            return duration > 0 ? duration : UNKNOWN_DURATION;
+        } catch (IOException e) {
+            return UNKNOWN_DURATION;
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Nothing left to do with the file
+                }
+            }
+        }
+    }
+
+    /*
+     * Select the parser for the container of the format
+     */
+    private static DurationParser getParser(AudioFormat format) {
+        if (format == null) {
+            return null;
+        }
+        switch (format) {
+            case MP3:
+                return MP3_PARSER;
+            case M4A:
+            case M4B:
+            case THREE_GP:
+                return MP4_PARSER;
+            case FLAC:
+                return FLAC_PARSER;
+            case OGG:
+            case OPUS:
+                return OGG_PARSER;
+            case WAV:
+                return WAV_PARSER;
+            default:
+                return null;
+        }
+    }
+}
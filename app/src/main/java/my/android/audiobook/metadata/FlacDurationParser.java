@@ -0,0 +1,38 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of FLAC files from the STREAMINFO metadata block
+ */
+
+class FlacDurationParser extends DurationParser {
+
+    @Override
+    long parseDuration(RandomAccessFile file) throws IOException {
+        file.seek(skipId3v2Tags(file));
+        byte[] marker = new byte[4];
+        file.readFully(marker);
+        if (!matches(marker, 0, "fLaC")) {
+            return UNKNOWN_DURATION;
+        }
+
+        // STREAMINFO is always the first metadata block
+        byte[] blockHeader = new byte[4];
+        file.readFully(blockHeader);
+        if ((blockHeader[0] & 0x7F) != 0) {
+            return UNKNOWN_DURATION;
+        }
+        byte[] streamInfo = new byte[34];
+        file.readFully(streamInfo);
+
+        // 20 bits sample rate, 3 bits channels, 5 bits bits per sample and 36 bits total samples
+        int sampleRate = (streamInfo[10] & 0xFF) << 12 | (streamInfo[11] & 0xFF) << 4 | (streamInfo[12] & 0xFF) >> 4;
+        long totalSamples = (streamInfo[13] & 0x0FL) << 32 | readUInt32BE(streamInfo, 14);
+        if (sampleRate == 0 || totalSamples == 0) {
+            return UNKNOWN_DURATION;
+        }
+        return totalSamples * 1000 / sampleRate;
+    }
+}
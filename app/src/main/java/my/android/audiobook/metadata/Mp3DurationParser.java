@@ -0,0 +1,151 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of MPEG audio files from the Xing/Info or VBRI header of the first frame.
+ * Files without such a header are treated as constant bitrate streams.
+ */
+
+class Mp3DurationParser extends DurationParser {
+    // Number of bytes searched for the first frame behind the ID3v2 tags
+    private static final int MAX_SYNC_SEARCH = 64 * 1024;
+
+    // Bitrates in kbit/s, rows are MPEG 1 layer I, II, III and MPEG 2/2.5 layer I, layer II/III
+    private static final int[][] BITRATES = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+
+    // Sample rates of MPEG 1, halved for MPEG 2 and quartered for MPEG 2.5
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    @Override
+    long parseDuration(RandomAccessFile file) throws IOException {
+        long audioStart = skipId3v2Tags(file);
+        file.seek(audioStart);
+        byte[] buffer = new byte[MAX_SYNC_SEARCH];
+        int length = readBuffer(file, buffer);
+
+        for (int offset = 0; offset + 4 <= length; offset++) {
+            FrameHeader header = FrameHeader.parse(buffer, offset);
+            if (header == null) {
+                continue;
+            }
+            // Make sure the sync word was not found by accident by checking the following frame
+            int nextOffset = offset + header.mFrameLength;
+            if (nextOffset + 4 <= length && FrameHeader.parse(buffer, nextOffset) == null) {
+                continue;
+            }
+            return getDuration(file, buffer, length, offset, audioStart + offset, header);
+        }
+        return UNKNOWN_DURATION;
+    }
+
+    /*
+     * Compute the duration from the first frame found at the given offset of the buffer
+     */
+    private long getDuration(RandomAccessFile file, byte[] buffer, int length, int offset, long frameStart, FrameHeader header) throws IOException {
+        // Variable bitrate files written by LAME and most other encoders store the number of
+        // frames in a Xing or Info header behind the side information of the first frame
+        int xingOffset = offset + 4 + header.getSideInfoLength();
+        if (xingOffset + 12 <= length && (matches(buffer, xingOffset, "Xing") || matches(buffer, xingOffset, "Info"))) {
+            long flags = readUInt32BE(buffer, xingOffset + 4);
+            if ((flags & 1) != 0) {
+                return header.getDuration(readUInt32BE(buffer, xingOffset + 8));
+            }
+        }
+
+        // The Fraunhofer encoder stores a VBRI header 32 bytes behind the frame header
+        int vbriOffset = offset + 4 + 32;
+        if (vbriOffset + 18 <= length && matches(buffer, vbriOffset, "VBRI")) {
+            return header.getDuration(readUInt32BE(buffer, vbriOffset + 14));
+        }
+
+        // Constant bitrate, the ID3v1 tag at the end of the file does not contain audio data
+        long audioEnd = file.length();
+        if (audioEnd - frameStart >= 128) {
+            byte[] tag = new byte[3];
+            file.seek(audioEnd - 128);
+            file.readFully(tag);
+            if (matches(tag, 0, "TAG")) {
+                audioEnd -= 128;
+            }
+        }
+        return (audioEnd - frameStart) * 8 / header.mBitrate;
+    }
+
+    private static class FrameHeader {
+        private boolean mIsMpeg1;
+        private boolean mIsMono;
+        private int mLayer;
+        private int mBitrate;
+        private int mSampleRate;
+        private int mSamplesPerFrame;
+        private int mFrameLength;
+
+        /*
+         * Parse the frame header at the given offset, return null if there is no valid header
+         */
+        static FrameHeader parse(byte[] buffer, int offset) {
+            if (offset + 4 > buffer.length) {
+                return null;
+            }
+            int b1 = buffer[offset + 1] & 0xFF;
+            int b2 = buffer[offset + 2] & 0xFF;
+            int b3 = buffer[offset + 3] & 0xFF;
+            if ((buffer[offset] & 0xFF) != 0xFF || (b1 & 0xE0) != 0xE0) {
+                return null;
+            }
+
+            int versionBits = (b1 >> 3) & 0x03;
+            int layerBits = (b1 >> 1) & 0x03;
+            int bitrateIndex = (b2 >> 4) & 0x0F;
+            int sampleRateIndex = (b2 >> 2) & 0x03;
+            // Reject reserved values and free format streams
+            if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+                return null;
+            }
+
+            FrameHeader header = new FrameHeader();
+            header.mIsMpeg1 = versionBits == 3;
+            header.mIsMono = ((b3 >> 6) & 0x03) == 3;
+            header.mLayer = 4 - layerBits;
+            if (header.mIsMpeg1) {
+                header.mBitrate = BITRATES[header.mLayer - 1][bitrateIndex];
+                header.mSampleRate = SAMPLE_RATES[sampleRateIndex];
+            } else {
+                header.mBitrate = BITRATES[header.mLayer == 1 ? 3 : 4][bitrateIndex];
+                header.mSampleRate = SAMPLE_RATES[sampleRateIndex] >> (versionBits == 2 ? 1 : 2);
+            }
+
+            int padding = (b2 >> 1) & 0x01;
+            if (header.mLayer == 1) {
+                header.mSamplesPerFrame = 384;
+                header.mFrameLength = (12 * header.mBitrate * 1000 / header.mSampleRate + padding) * 4;
+            } else {
+                header.mSamplesPerFrame = header.mLayer == 3 && !header.mIsMpeg1 ? 576 : 1152;
+                header.mFrameLength = header.mSamplesPerFrame / 8 * header.mBitrate * 1000 / header.mSampleRate + padding;
+            }
+            return header;
+        }
+
+        /*
+         * Length of the layer III side information that precedes a Xing header
+         */
+        int getSideInfoLength() {
+            if (mIsMpeg1) {
+                return mIsMono ? 17 : 32;
+            }
+            return mIsMono ? 9 : 17;
+        }
+
+        long getDuration(long frameCount) {
+            return frameCount * mSamplesPerFrame * 1000 / mSampleRate;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of MPEG-4 files (m4a, m4b, 3gp) from the movie header atom
+ */
+
+class Mp4DurationParser extends DurationParser {
+
+    @Override
+    long parseDuration(RandomAccessFile file) throws IOException {
+        long[] moov = findAtom(file, 0, file.length(), "moov");
+        if (moov == null) {
+            return UNKNOWN_DURATION;
+        }
+        long[] mvhd = findAtom(file, moov[0], moov[1], "mvhd");
+        if (mvhd == null) {
+            return UNKNOWN_DURATION;
+        }
+
+        file.seek(mvhd[0]);
+        int version = file.readUnsignedByte();
+        // Skip flags as well as creation and modification time
+        long timescale;
+        long duration;
+        if (version == 1) {
+            file.skipBytes(3 + 16);
+            timescale = file.readInt() & 0xFFFFFFFFL;
+            duration = file.readLong();
+        } else {
+            file.skipBytes(3 + 8);
+            timescale = file.readInt() & 0xFFFFFFFFL;
+            duration = file.readInt() & 0xFFFFFFFFL;
+            // A duration with all bits set means that the duration is unknown
+            if (duration == 0xFFFFFFFFL) {
+                return UNKNOWN_DURATION;
+            }
+        }
+
+        if (timescale == 0 || duration <= 0) {
+            return UNKNOWN_DURATION;
+        }
+        return duration * 1000 / timescale;
+    }
+
+    /*
+     * Search the atoms between start and end for the given type. Return the start and end of the
+     * atom's content or null if there is no such atom.
+     */
+    private long[] findAtom(RandomAccessFile file, long start, long end, String type) throws IOException {
+        byte[] header = new byte[8];
+        long position = start;
+        while (position + header.length <= end) {
+            file.seek(position);
+            file.readFully(header);
+            long size = readUInt32BE(header, 0);
+            int headerLength = header.length;
+            if (size == 1) {
+                // 64 bit size follows the type
+                size = file.readLong();
+                headerLength += 8;
+            } else if (size == 0) {
+                // Atom extends to the end of its parent
+                size = end - position;
+            }
+            if (size < headerLength) {
+                return null;
+            }
+
+            if (matches(header, 4, type)) {
+                return new long[]{position + headerLength, Math.min(position + size, end)};
+            }
+            position += size;
+        }
+        return null;
+    }
+}
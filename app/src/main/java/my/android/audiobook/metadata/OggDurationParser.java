@@ -0,0 +1,62 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of Ogg Vorbis and Opus files from the granule position of the last page
+ */
+
+class OggDurationParser extends DurationParser {
+    private static final int PAGE_HEADER_LENGTH = 27;
+    private static final int MAX_PAGE_LENGTH = PAGE_HEADER_LENGTH + 255 + 255 * 255;
+    // Opus granule positions always count samples at 48 kHz
+    private static final int OPUS_SAMPLE_RATE = 48000;
+
+    @Override
+    long parseDuration(RandomAccessFile file) throws IOException {
+        // The first page contains the identification header of the stream
+        byte[] firstPage = new byte[PAGE_HEADER_LENGTH + 255 + 64];
+        file.seek(0);
+        int firstPageLength = readBuffer(file, firstPage);
+        if (firstPageLength < PAGE_HEADER_LENGTH || !matches(firstPage, 0, "OggS")) {
+            return UNKNOWN_DURATION;
+        }
+        long serialNumber = readUInt32LE(firstPage, 14);
+        int packetOffset = PAGE_HEADER_LENGTH + (firstPage[26] & 0xFF);
+
+        long sampleRate;
+        long preSkip = 0;
+        if (packetOffset + 16 <= firstPageLength && firstPage[packetOffset] == 1 && matches(firstPage, packetOffset + 1, "vorbis")) {
+            sampleRate = readUInt32LE(firstPage, packetOffset + 12);
+        } else if (packetOffset + 12 <= firstPageLength && matches(firstPage, packetOffset, "OpusHead")) {
+            sampleRate = OPUS_SAMPLE_RATE;
+            preSkip = readUInt16LE(firstPage, packetOffset + 10);
+        } else {
+            return UNKNOWN_DURATION;
+        }
+        if (sampleRate == 0) {
+            return UNKNOWN_DURATION;
+        }
+
+        // Search the end of the file backwards for the last page of the stream
+        long fileLength = file.length();
+        int tailLength = (int) Math.min(fileLength, MAX_PAGE_LENGTH);
+        byte[] tail = new byte[tailLength];
+        file.seek(fileLength - tailLength);
+        file.readFully(tail);
+        for (int offset = tailLength - PAGE_HEADER_LENGTH; offset >= 0; offset--) {
+            if (!matches(tail, offset, "OggS") || tail[offset + 4] != 0 || readUInt32LE(tail, offset + 14) != serialNumber) {
+                continue;
+            }
+            // A granule position of -1 means that no packet finishes on this page
+            long granulePosition = readInt64LE(tail, offset + 6);
+            if (granulePosition == -1) {
+                continue;
+            }
+            long samples = granulePosition - preSkip;
+            return samples > 0 ? samples * 1000 / sampleRate : UNKNOWN_DURATION;
+        }
+        return UNKNOWN_DURATION;
+    }
+}
@@ -0,0 +1,51 @@
+package my.android.audiobook.metadata;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Reads the duration of WAV files from the byte rate of the fmt chunk and the size of the data chunk
+ */
+
+class WavDurationParser extends DurationParser {
+
+    @Override
+    long parseDuration(RandomAccessFile file) throws IOException {
+        byte[] header = new byte[12];
+        file.seek(0);
+        file.readFully(header);
+        if (!matches(header, 0, "RIFF") || !matches(header, 8, "WAVE")) {
+            return UNKNOWN_DURATION;
+        }
+
+        long fileLength = file.length();
+        long byteRate = 0;
+        long position = header.length;
+        byte[] chunkHeader = new byte[8];
+        while (position + chunkHeader.length <= fileLength) {
+            file.seek(position);
+            file.readFully(chunkHeader);
+            long chunkSize = readUInt32LE(chunkHeader, 4);
+            long chunkStart = position + chunkHeader.length;
+
+            if (matches(chunkHeader, 0, "fmt ")) {
+                byte[] format = new byte[16];
+                file.readFully(format);
+                byteRate = readUInt32LE(format, 8);
+            } else if (matches(chunkHeader, 0, "data")) {
+                if (byteRate == 0) {
+                    return UNKNOWN_DURATION;
+                }
+                // The size is missing if the recording was interrupted before the header was written
+                if (chunkSize == 0 || chunkStart + chunkSize > fileLength) {
+                    chunkSize = fileLength - chunkStart;
+                }
+                return chunkSize * 1000 / byteRate;
+            }
+
+            // Chunks are padded to an even size
+            position = chunkStart + chunkSize + (chunkSize & 1);
+        }
+        return UNKNOWN_DURATION;
+    }
+}
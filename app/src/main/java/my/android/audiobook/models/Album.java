@@ -7,7 +7,8 @@ import android.database.Cursor;
 import android.net.Uri;
 
 import my.android.audiobook.data.BookContract;
-import my.android.audiobook.utils.Utils;
+import my.android.audiobook.helpers.CoverIndex;
+import my.android.audiobook.helpers.DirectoryListing;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -19,13 +20,48 @@ public class Album {
     private Directory mDirectory;
     private String mCoverPath;
     private long mLastPlayedID;
+    private long mDirMtime = 0;
+    private int mEntryCount = -1;
+    private String mCoverCandidates;
+    private long mCoverMtime = 0;
+    private String mFingerprint;
+    private String mEmbeddedCover;
 
     private static final String[] mAlbumColumns = new String[]{
             BookContract.AlbumEntry._ID,
             BookContract.AlbumEntry.COLUMN_TITLE,
             BookContract.AlbumEntry.COLUMN_DIRECTORY,
             BookContract.AlbumEntry.COLUMN_COVER_PATH,
-            BookContract.AlbumEntry.COLUMN_LAST_PLAYED
+            BookContract.AlbumEntry.COLUMN_LAST_PLAYED,
+            BookContract.AlbumEntry.COLUMN_DIR_MTIME,
+            BookContract.AlbumEntry.COLUMN_ENTRY_COUNT,
+            BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES,
+            BookContract.AlbumEntry.COLUMN_COVER_MTIME,
+            BookContract.AlbumEntry.COLUMN_FINGERPRINT,
+            BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER,
+            BookContract.AlbumEntry.COLUMN_TOTAL_TIME,
+            BookContract.AlbumEntry.COLUMN_COMPLETED_TIME,
+            BookContract.AlbumEntry.COLUMN_TRACK_COUNT
+    };
+
+    // Columns of the album list, which contains the directory of every album
+    private static final String[] mAlbumListColumns = new String[]{
+            BookContract.AlbumEntry._ID,
+            BookContract.AlbumEntry.COLUMN_TITLE,
+            BookContract.AlbumEntry.COLUMN_DIRECTORY,
+            BookContract.AlbumEntry.COLUMN_COVER_PATH,
+            BookContract.AlbumEntry.COLUMN_LAST_PLAYED,
+            BookContract.AlbumEntry.COLUMN_DIR_MTIME,
+            BookContract.AlbumEntry.COLUMN_ENTRY_COUNT,
+            BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES,
+            BookContract.AlbumEntry.COLUMN_COVER_MTIME,
+            BookContract.AlbumEntry.COLUMN_FINGERPRINT,
+            BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER,
+            BookContract.AlbumEntry.COLUMN_TOTAL_TIME,
+            BookContract.AlbumEntry.COLUMN_COMPLETED_TIME,
+            BookContract.AlbumEntry.COLUMN_TRACK_COUNT,
+            BookContract.AlbumEntry.COLUMN_DIRECTORY_PATH,
+            BookContract.AlbumEntry.COLUMN_DIRECTORY_TYPE
     };
 
     public Album(long id, String title, Directory directory, String coverPath, long lastPlayed) {
@@ -68,17 +104,31 @@ public class Album {
         return new File(mDirectory.getPath(), mCoverPath).getAbsolutePath();
     }
 
+    public Directory getDirectory() {
+        return mDirectory;
+    }
+
     public void setDirectory(Directory directory) {
         mDirectory = directory;
     }
 
+    /*
+     * Move the album to its new location, the album keeps its id and thus its audio files and
+     * listening progress
+     */
+    public void moveTo(Directory directory, String title) {
+        mDirectory = directory;
+        mTitle = title;
+    }
+
     public String getPath() {
         if (mDirectory == null) {
             return null;
         }
 
         File albumFile;
-        if (mDirectory.getType() == Directory.Type.PARENT_DIR) {
+        if (mDirectory.getType() != Directory.Type.SUB_DIR) {
+            // Titles of albums in recursive directories are relative paths
             albumFile = new File(mDirectory.getPath(), mTitle);
         } else {
             albumFile = new File(mDirectory.getPath());
@@ -94,25 +144,97 @@ public class Album {
         return mLastPlayedID;
     }
 
+    public long getDirMtime() {
+        return mDirMtime;
+    }
+
+    public int getEntryCount() {
+        return mEntryCount;
+    }
+
+    /*
+     * Set the manifest of the album directory, i.e. its modification time and number of entries
+     * at the time of the last synchronization
+     */
+    public void setManifest(long dirMtime, int entryCount) {
+        mDirMtime = dirMtime;
+        mEntryCount = entryCount;
+    }
+
+    /*
+     * Set the ranked cover candidates and the modification time of the album directory at which
+     * they were determined
+     */
+    public void setCoverIndex(String coverCandidates, long coverMtime) {
+        mCoverCandidates = coverCandidates;
+        mCoverMtime = coverMtime;
+    }
+
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        mFingerprint = fingerprint;
+    }
+
+    /*
+     * Get the fingerprint of the audio file whose embedded cover is stored as thumbnails, null if
+     * no embedded cover has been extracted
+     */
+    public String getEmbeddedCover() {
+        return mEmbeddedCover;
+    }
+
+    public void setEmbeddedCover(String embeddedCover) {
+        mEmbeddedCover = embeddedCover;
+    }
+
     static public String[] getColumns() {
         return mAlbumColumns;
     }
 
+    /*
+     * Get the columns to query from BookContract.AlbumEntry.CONTENT_LIST_URI
+     */
+    static public String[] getListColumns() {
+        return mAlbumListColumns;
+    }
+
     /*
      * Set the album cover if it has not yet been set or if the current cover does not exist anymore
      */
     public String updateAlbumCover() {
         if (mCoverPath == null || !(new File(mDirectory.getPath() + File.separator + mCoverPath).exists())) {
             // Search for a cover in the album directory
-            File albumDir = new File(mDirectory.getPath() + File.separator + mTitle);
-            mCoverPath = Utils.getImagePath(albumDir);
-            if (mCoverPath != null) {
-                mCoverPath = mCoverPath.replace(mDirectory.getPath(), "");
+            DirectoryListing listing = DirectoryListing.read(new File(getPath()), true, false);
+            mCoverPath = null;
+            if (listing != null) {
+                updateAlbumCover(listing);
             }
         }
         return mCoverPath;
     }
 
+    /*
+     * Update the cover from a listing of the album directory. The cover candidates are only
+     * ranked again if the directory changed since the cover index was built.
+     */
+    public String updateAlbumCover(DirectoryListing listing) {
+        if (mCoverMtime == 0 || mCoverMtime != listing.getLastModified()) {
+            mCoverCandidates = CoverIndex.buildIndex(listing.getImages());
+            mCoverMtime = listing.getLastModified();
+        }
+
+        mCoverPath = null;
+        String coverName = CoverIndex.getBestCandidate(mCoverCandidates);
+        if (coverName != null) {
+            String coverPath = new File(listing.getDirectory(), coverName).getAbsolutePath();
+            mCoverPath = coverPath.replace(mDirectory.getPath(), "");
+        }
+        return mCoverPath;
+    }
+
     /*
      * Insert album into database
      */
@@ -149,6 +271,12 @@ public class Album {
         values.put(BookContract.AlbumEntry.COLUMN_DIRECTORY, mDirectory.getID());
         values.put(BookContract.AlbumEntry.COLUMN_COVER_PATH, mCoverPath);
         values.put(BookContract.AlbumEntry.COLUMN_LAST_PLAYED, mLastPlayedID);
+        values.put(BookContract.AlbumEntry.COLUMN_DIR_MTIME, mDirMtime);
+        values.put(BookContract.AlbumEntry.COLUMN_ENTRY_COUNT, mEntryCount);
+        values.put(BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES, mCoverCandidates);
+        values.put(BookContract.AlbumEntry.COLUMN_COVER_MTIME, mCoverMtime);
+        values.put(BookContract.AlbumEntry.COLUMN_FINGERPRINT, mFingerprint);
+        values.put(BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER, mEmbeddedCover);
         return values;
     }
 
@@ -169,7 +297,8 @@ public class Album {
 
         Album album = null;
         if (c.moveToNext()) {
-            album = getAlbumFromPositionedCursor(context, c);
+            long directoryId = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIRECTORY));
+            album = getAlbumFromPositionedCursor(c, Directory.getDirectoryByID(context, directoryId));
         }
         c.close();
 
@@ -196,8 +325,10 @@ public class Album {
             return albums;
         }
 
+        // All albums share the same directory
+        Directory directory = Directory.getDirectoryByID(context, directoryId);
         while (c.moveToNext()) {
-            Album album = getAlbumFromPositionedCursor(context, c);
+            Album album = getAlbumFromPositionedCursor(c, directory);
             albums.add(album);
         }
         c.close();
@@ -205,16 +336,38 @@ public class Album {
         return albums;
     }
 
-    private static Album getAlbumFromPositionedCursor(Context context, Cursor c) {
+    /*
+     * Get the album at the current position of a cursor of the album list without any further
+     * queries
+     */
+    public static Album getAlbumFromListCursor(Cursor c) {
+        Directory directory = null;
+        int pathIndex = c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIRECTORY_PATH);
+        if (!c.isNull(pathIndex)) {
+            long directoryId = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIRECTORY));
+            int directoryType = c.getInt(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIRECTORY_TYPE));
+            directory = new Directory(directoryId, c.getString(pathIndex), directoryType);
+        }
+        return getAlbumFromPositionedCursor(c, directory);
+    }
+
+    private static Album getAlbumFromPositionedCursor(Cursor c, Directory directory) {
         long id = c.getLong(c.getColumnIndex(BookContract.AlbumEntry._ID));
         String title = c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_TITLE));
-        long directoryId = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIRECTORY));
-        Directory directory = Directory.getDirectoryByID(context, directoryId);
         String coverPath = c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_COVER_PATH));
         long lastPlayed = -1;
         if (!c.isNull(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_LAST_PLAYED))) {
             lastPlayed = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_LAST_PLAYED));
         }
-        return new Album(id, title, directory, coverPath, lastPlayed);
+        Album album = new Album(id, title, directory, coverPath, lastPlayed);
+        long dirMtime = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_DIR_MTIME));
+        int entryCount = c.getInt(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_ENTRY_COUNT));
+        album.setManifest(dirMtime, entryCount);
+        String coverCandidates = c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_COVER_CANDIDATES));
+        long coverMtime = c.getLong(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_COVER_MTIME));
+        album.setCoverIndex(coverCandidates, coverMtime);
+        album.setFingerprint(c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_FINGERPRINT)));
+        album.setEmbeddedCover(c.getString(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_EMBEDDED_COVER)));
+        return album;
     }
 }
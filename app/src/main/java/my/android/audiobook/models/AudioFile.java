@@ -6,35 +6,60 @@ import android.content.Context;
 import android.database.Cursor;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
+import android.util.Log;
 
 import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.ProgressStore;
+import my.android.audiobook.metadata.AudioFormat;
+import my.android.audiobook.metadata.DurationProbe;
 
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 
 public class AudioFile implements Serializable {
+    private static final String LOG_TAG = AudioFile.class.getSimpleName();
 
     private long mID = -1;
     private String mTitle;
     private Album mAlbum;
     private int mTime;
     private int mCompletedTime;
+    private AudioFormat mFormat;
+    private String mFingerprint;
+    private boolean mTagsRead = false;
+    private String mTagTitle;
+    private String mTagArtist;
+    private String mTagAlbum;
+    private int mTrackNumber;
+    private int mDiscNumber;
+    private String mNarrator;
 
     private static final String[] mAudioFileColumns = {
                 BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry._ID,
                 BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TITLE,
                 BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_ALBUM,
                 BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TIME,
-                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_COMPLETED_TIME
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_COMPLETED_TIME,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_FORMAT,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_FINGERPRINT,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TAGS_READ,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TAG_TITLE,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TAG_ARTIST,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TAG_ALBUM,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_TRACK_NUMBER,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_DISC_NUMBER,
+                BookContract.AudioEntry.TABLE_NAME + "." + BookContract.AudioEntry.COLUMN_NARRATOR
     };
 
-    private AudioFile(Context context, long id, String title, long albumId, int time, int completedTime) {
+    private AudioFile(long id, String title, Album album, int time, int completedTime, AudioFormat format, String fingerprint) {
         mID = id;
         mTitle = title;
-        mAlbum = Album.getAlbumByID(context, albumId);
+        mAlbum = album;
         mTime = time;
         mCompletedTime = completedTime;
+        mFormat = format;
+        mFingerprint = fingerprint;
     }
 
     public AudioFile(Context context, String title, long albumId) {
@@ -44,6 +69,15 @@ public class AudioFile implements Serializable {
         mCompletedTime = 0;
     }
 
+    public AudioFile(String title, Album album, AudioFormat format, String fingerprint) {
+        mTitle = title;
+        mAlbum = album;
+        mFormat = format;
+        mFingerprint = fingerprint;
+        setTimeFromMetadata();
+        mCompletedTime = 0;
+    }
+
     public long getID() {
         return mID;
     }
@@ -70,6 +104,75 @@ public class AudioFile implements Serializable {
         return mCompletedTime;
     }
 
+    /*
+     * Return the format detected during the synchronization. Might be null for audio files that
+     * were added by older versions.
+     */
+    public AudioFormat getFormat() {
+        return mFormat;
+    }
+
+    public String getFingerprint() {
+        return mFingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        mFingerprint = fingerprint;
+    }
+
+    /*
+     * Rename the audio file, it keeps its id and thus its progress and bookmarks
+     */
+    public void setTitle(String title) {
+        mTitle = title;
+    }
+
+    /*
+     * Get the title to show for the audio file. The title from the tags is only used if it was
+     * requested and stored during the synchronization, the file name is used otherwise.
+     */
+    public String getDisplayTitle(boolean titleFromMetadata) {
+        if (titleFromMetadata && mTagTitle != null && !mTagTitle.isEmpty()) {
+            return mTagTitle;
+        }
+        return mTitle;
+    }
+
+    public boolean areTagsRead() {
+        return mTagsRead;
+    }
+
+    public String getTagTitle() {
+        return mTagTitle;
+    }
+
+    public String getTagArtist() {
+        return mTagArtist;
+    }
+
+    public String getTagAlbum() {
+        return mTagAlbum;
+    }
+
+    public int getTrackNumber() {
+        return mTrackNumber;
+    }
+
+    public int getDiscNumber() {
+        return mDiscNumber;
+    }
+
+    public String getNarrator() {
+        return mNarrator;
+    }
+
+    /*
+     * Mark the stored tags as outdated, e.g. because the file was modified
+     */
+    public void invalidateTags() {
+        mTagsRead = false;
+    }
+
     public String getPath() { return mAlbum.getPath() + File.separator + mTitle; }
 
     public String getCoverPath() {
@@ -81,18 +184,72 @@ public class AudioFile implements Serializable {
     }
 
     /*
-     * Retrieve audio file duration from metadata.
+     * Retrieve audio file duration from metadata. The container headers are parsed directly if
+     * possible, the much slower MediaMetadataRetriever is only used for other formats.
      */
     private void setTimeFromMetadata() {
+        String audioFilePath = getPath();
+        File file = new File(audioFilePath);
+        long probedDuration = mFormat != null ? DurationProbe.probeDuration(file, mFormat) : DurationProbe.probeDuration(file);
+        if (probedDuration != DurationProbe.UNKNOWN_DURATION) {
+            mTime = (int) probedDuration;
+            return;
+        }
+
         MediaMetadataRetriever metaRetriever = new MediaMetadataRetriever();
         try {
-            String audioFilePath = mAlbum.getPath() + File.separator + mTitle;
             metaRetriever.setDataSource(audioFilePath);
             String duration = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
             mTime = Integer.parseInt(duration);
-            metaRetriever.release();
         } catch (java.lang.RuntimeException e) {
+            Log.e(LOG_TAG, "Could not retrieve the duration of " + audioFilePath, e);
             mTime = 0;
+        } finally {
+            metaRetriever.release();
+        }
+    }
+
+    /*
+     * Read the tags of the audio file. This uses the slow MediaMetadataRetriever, so it is only
+     * done during the synchronization and the tags are stored in the database. Audio books
+     * usually keep the narrator in the composer tag.
+     */
+    public void readTags() {
+        String audioFilePath = getPath();
+        MediaMetadataRetriever metaRetriever = new MediaMetadataRetriever();
+        try {
+            metaRetriever.setDataSource(audioFilePath);
+            mTagTitle = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+            mTagArtist = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+            mTagAlbum = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
+            mTrackNumber = parseNumber(metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER));
+            mDiscNumber = parseNumber(metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DISC_NUMBER));
+            mNarrator = metaRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_COMPOSER);
+        } catch (java.lang.RuntimeException e) {
+            Log.e(LOG_TAG, "Could not retrieve the tags of " + audioFilePath, e);
+        } finally {
+            metaRetriever.release();
+        }
+        // Don't retry files without readable tags on every synchronization
+        mTagsRead = true;
+    }
+
+    /*
+     * Parse track and disc numbers, which might be given as "3/12"
+     */
+    private static int parseNumber(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int end = 0;
+        value = value.trim();
+        while (end < value.length() && Character.isDigit(value.charAt(end))) {
+            end++;
+        }
+        try {
+            return end > 0 ? Integer.parseInt(value.substring(0, end)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
@@ -100,10 +257,7 @@ public class AudioFile implements Serializable {
      * Insert audio file into the audio_files table in the database
      */
     public long insertIntoDB(Context context) {
-        ContentValues values = new ContentValues();
-        values.put(BookContract.AudioEntry.COLUMN_TITLE, mTitle);
-        values.put(BookContract.AudioEntry.COLUMN_ALBUM, mAlbum.getID());
-        values.put(BookContract.AudioEntry.COLUMN_TIME, mTime);
+        ContentValues values = getContentValues();
         Uri uri = context.getContentResolver().insert(BookContract.AudioEntry.CONTENT_URI, values);
 
         if (uri == null) {
@@ -114,6 +268,37 @@ public class AudioFile implements Serializable {
         return mID;
     }
 
+    /*
+     * Put audio file column values into content values
+     */
+    public ContentValues getContentValues() {
+        ContentValues values = new ContentValues();
+        values.put(BookContract.AudioEntry.COLUMN_TITLE, mTitle);
+        values.put(BookContract.AudioEntry.COLUMN_ALBUM, mAlbum.getID());
+        values.put(BookContract.AudioEntry.COLUMN_TIME, mTime);
+        values.put(BookContract.AudioEntry.COLUMN_FORMAT, mFormat != null ? mFormat.name() : null);
+        values.put(BookContract.AudioEntry.COLUMN_FINGERPRINT, mFingerprint);
+        putTagValues(values);
+        return values;
+    }
+
+    /*
+     * Put the tag column values into content values
+     */
+    public void putTagValues(ContentValues values) {
+        values.put(BookContract.AudioEntry.COLUMN_TAGS_READ, mTagsRead ? 1 : 0);
+        values.put(BookContract.AudioEntry.COLUMN_TAG_TITLE, mTagTitle);
+        values.put(BookContract.AudioEntry.COLUMN_TAG_ARTIST, mTagArtist);
+        values.put(BookContract.AudioEntry.COLUMN_TAG_ALBUM, mTagAlbum);
+        values.put(BookContract.AudioEntry.COLUMN_TRACK_NUMBER, mTrackNumber);
+        values.put(BookContract.AudioEntry.COLUMN_DISC_NUMBER, mDiscNumber);
+        values.put(BookContract.AudioEntry.COLUMN_NARRATOR, mNarrator);
+    }
+
+    public static String[] getColumns() {
+        return mAudioFileColumns;
+    }
+
     /*
      * Retrieve audio file with given ID from database
      */
@@ -130,7 +315,8 @@ public class AudioFile implements Serializable {
 
         AudioFile audioFile = null;
         if (c.moveToFirst()) {
-            audioFile = getAudioFileFromPositionedCursor(context, c);
+            long albumId = c.getLong(c.getColumnIndex(BookContract.AudioEntry.COLUMN_ALBUM));
+            audioFile = getAudioFileFromPositionedCursor(c, Album.getAlbumByID(context, albumId), ProgressStore.getInstance(context));
         }
         c.close();
 
@@ -141,6 +327,15 @@ public class AudioFile implements Serializable {
      * Get all audio files in the given album
      */
     public static ArrayList<AudioFile> getAllAudioFilesInAlbum(Context context, long albumId, String sortOrder) {
+        return getAllAudioFilesInAlbum(context, albumId, sortOrder, ProgressStore.getInstance(context));
+    }
+
+    /*
+     * Get all audio files in the given album. The completed times are taken from the progress
+     * store if they were not written to the database yet, unless the store is null because the
+     * progress is not needed.
+     */
+    public static ArrayList<AudioFile> getAllAudioFilesInAlbum(Context context, long albumId, String sortOrder, ProgressStore progressStore) {
         ArrayList<AudioFile> audioFiles = new ArrayList<>();
         String sel = BookContract.AudioEntry.COLUMN_ALBUM + "=?";
         String[] selArgs = {Long.toString(albumId)};
@@ -156,8 +351,10 @@ public class AudioFile implements Serializable {
             return audioFiles;
         }
 
+        // All audio files belong to the same album
+        Album album = Album.getAlbumByID(context, albumId);
         while (c.moveToNext()) {
-            AudioFile audioFile = getAudioFileFromPositionedCursor(context, c);
+            AudioFile audioFile = getAudioFileFromPositionedCursor(c, album, progressStore);
             audioFiles.add(audioFile);
         }
         c.close();
@@ -166,14 +363,30 @@ public class AudioFile implements Serializable {
     }
 
     /*
-     * Create an Audio File from a cursor that is already at the correct position
+     * Create an Audio File of the given album from a cursor that is already at the correct
+     * position. The cursor has to contain the columns returned by getColumns(). The progress
+     * store is resolved once per cursor by the caller, null skips the positions that were not
+     * written to the database yet.
      */
-    private static AudioFile getAudioFileFromPositionedCursor(Context context, Cursor c) {
+    public static AudioFile getAudioFileFromPositionedCursor(Cursor c, Album album, ProgressStore progressStore) {
         long id = c.getLong(c.getColumnIndex(BookContract.AudioEntry._ID));
         String title = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TITLE));
-        long albumId = c.getLong(c.getColumnIndex(BookContract.AudioEntry.COLUMN_ALBUM));
         int completedTime = c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_COMPLETED_TIME));
+        if (progressStore != null) {
+            // A saved position might not be written to the database yet
+            completedTime = progressStore.getCompletedTime(id, completedTime);
+        }
         int time = c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TIME));
-        return new AudioFile(context, id, title, albumId, time, completedTime);
+        AudioFormat format = AudioFormat.fromName(c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_FORMAT)));
+        String fingerprint = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_FINGERPRINT));
+        AudioFile audioFile = new AudioFile(id, title, album, time, completedTime, format, fingerprint);
+        audioFile.mTagsRead = c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TAGS_READ)) != 0;
+        audioFile.mTagTitle = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TAG_TITLE));
+        audioFile.mTagArtist = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TAG_ARTIST));
+        audioFile.mTagAlbum = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TAG_ALBUM));
+        audioFile.mTrackNumber = c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TRACK_NUMBER));
+        audioFile.mDiscNumber = c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_DISC_NUMBER));
+        audioFile.mNarrator = c.getString(c.getColumnIndex(BookContract.AudioEntry.COLUMN_NARRATOR));
+        return audioFile;
     }
 }
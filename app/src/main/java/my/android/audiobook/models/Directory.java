@@ -16,7 +16,8 @@ public class Directory {
 
     public enum Type {
         PARENT_DIR(0),
-        SUB_DIR(1);
+        SUB_DIR(1),
+        RECURSIVE_DIR(2);
 
         private int value;
         private static Map<Integer, Type> map = new HashMap<>();
@@ -46,7 +47,7 @@ public class Directory {
             BookContract.DirectoryEntry.COLUMN_TYPE
     };
 
-    private Directory(long id, String path, int type) {
+    Directory(long id, String path, int type) {
         mID = id;
         mPath = path;
         mType = Type.valueOf(type);
@@ -0,0 +1,304 @@
+package my.android.audiobook.services;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import my.android.audiobook.R;
+import my.android.audiobook.data.BookContract;
+import my.android.audiobook.helpers.Synchronizer;
+import my.android.audiobook.models.Album;
+import my.android.audiobook.models.Directory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Service that keeps the library up to date by watching the library directories for changes.
+ * Only the library directories are watched permanently. A watch does not report changes inside
+ * its sub folders, so an event in a library directory makes the synchronizer descend into all of
+ * its album folders and synchronize the ones that do not match their stored manifest anymore.
+ * Album folders are only watched for the most recently changed albums, the number of these
+ * watches is limited such that large libraries do not exhaust the inotify watches. Changes in
+ * other album folders are picked up with the next event in their library directory.
+ *
+ * The service is not a foreground service, so Android 8 and later stop it shortly after the app
+ * went to the background and the library is only watched while the app is in use. Whenever the
+ * service is started, the albums of all directories are compared with their manifests, such that
+ * the changes made in the meantime are picked up.
+ */
+public class LibraryWatcherService extends Service {
+    // Events that change the list of albums or audio files
+    private static final int WATCH_EVENTS = FileObserver.CREATE | FileObserver.DELETE
+            | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    // Changes are synchronized once no further events arrived for this time
+    private static final long DEBOUNCE_DELAY = 2000;
+    // Changes are synchronized after this time at the latest, even if events keep arriving
+    private static final long MAX_DELAY = 10000;
+    // Maximum number of album folders that are watched in addition to the library directories
+    private static final int MAX_ALBUM_WATCHES = 64;
+
+    private HandlerThread mWatcherThread;
+    private Handler mHandler;
+    private Synchronizer mSynchronizer;
+    private ContentObserver mDirectoryObserver;
+
+    // Watches on the library directories
+    private final ArrayList<PathObserver> mDirectoryWatches = new ArrayList<>();
+    // Watches on album folders, ordered by their last activity. The least recently active watch
+    // is dropped once the limit is reached.
+    private final LinkedHashMap<String, PathObserver> mAlbumWatches = new LinkedHashMap<String, PathObserver>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PathObserver> eldest) {
+            if (size() > MAX_ALBUM_WATCHES) {
+                eldest.getValue().stopWatching();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Changes that still have to be synchronized, keyed by directory id
+    private final HashMap<Long, PendingChanges> mPendingChanges = new HashMap<>();
+    private long mFirstPendingTime = 0;
+    private final Runnable mFlushRunnable = this::flushPendingChanges;
+
+    /*
+     * Start or stop the service according to the settings
+     */
+    public static void updateState(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean watchLibrary = prefs.getBoolean(context.getString(R.string.settings_watch_library_key), Boolean.getBoolean(context.getString(R.string.settings_watch_library_default)));
+        Intent intent = new Intent(context, LibraryWatcherService.class);
+        if (watchLibrary) {
+            context.startService(intent);
+        } else {
+            context.stopService(intent);
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mSynchronizer = new Synchronizer(this);
+
+        // All watches are managed on a single background thread
+        mWatcherThread = new HandlerThread("LibraryWatcher", Process.THREAD_PRIORITY_BACKGROUND);
+        mWatcherThread.start();
+        mHandler = new Handler(mWatcherThread.getLooper());
+
+        // Update the watches when directories are added to or removed from the library
+        mDirectoryObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                watchDirectories();
+            }
+        };
+        getContentResolver().registerContentObserver(BookContract.DirectoryEntry.CONTENT_URI, true, mDirectoryObserver);
+
+        mHandler.post(() -> {
+            watchDirectories();
+            // Pick up the changes made while the library was not watched
+            mSynchronizer.updateDirectories(Directory.getDirectories(this));
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        getContentResolver().unregisterContentObserver(mDirectoryObserver);
+        mHandler.removeCallbacksAndMessages(null);
+        mHandler.post(() -> {
+            stopWatching();
+            mWatcherThread.quit();
+        });
+        super.onDestroy();
+    }
+
+    /*
+     * Watch all directories in the library. Album folders of parent directories are only watched
+     * for the most recently changed albums, other album folders get a watch once activity is
+     * observed in their parent directory.
+     */
+    private void watchDirectories() {
+        stopWatching();
+
+        ArrayList<Album> albums = new ArrayList<>();
+        for (Directory directory : Directory.getDirectories(this)) {
+            // Sub directories are albums themselves
+            boolean isAlbum = directory.getType() == Directory.Type.SUB_DIR;
+            PathObserver observer = new PathObserver(directory, directory.getPath(), isAlbum);
+            observer.startWatching();
+            mDirectoryWatches.add(observer);
+
+            if (!isAlbum) {
+                albums.addAll(Album.getAllAlbumsInDirectory(this, directory.getID()));
+            }
+        }
+
+        // Albums that changed recently are the most likely to change again
+        Collections.sort(albums, (album1, album2) -> Long.compare(album2.getDirMtime(), album1.getDirMtime()));
+        for (int i = Math.min(albums.size(), MAX_ALBUM_WATCHES) - 1; i >= 0; i--) {
+            Album album = albums.get(i);
+            watchAlbum(album.getDirectory(), album.getPath());
+        }
+    }
+
+    private void watchAlbum(Directory directory, String albumPath) {
+        if (mAlbumWatches.containsKey(albumPath)) {
+            return;
+        }
+        PathObserver observer = new PathObserver(directory, albumPath, true);
+        observer.startWatching();
+        mAlbumWatches.put(albumPath, observer);
+    }
+
+    private void stopWatching() {
+        for (PathObserver observer : mDirectoryWatches) {
+            observer.stopWatching();
+        }
+        mDirectoryWatches.clear();
+        for (PathObserver observer : mAlbumWatches.values()) {
+            observer.stopWatching();
+        }
+        mAlbumWatches.clear();
+    }
+
+    /*
+     * Translate a file system event into the album that has to be synchronized
+     */
+    private void handleEvent(PathObserver observer, int event, String name) {
+        if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+            if (observer.mIsAlbum) {
+                getPendingChanges(observer.mDirectory).mAlbumPaths.add(observer.mPath);
+                if (mAlbumWatches.remove(observer.mPath) != null) {
+                    observer.stopWatching();
+                }
+            } else {
+                getPendingChanges(observer.mDirectory).mDirectoryChanged = true;
+            }
+        } else if (name == null) {
+            return;
+        } else if (observer.mIsAlbum) {
+            // A file in an album folder changed. Accessing the watch keeps it from being dropped.
+            getPendingChanges(observer.mDirectory).mAlbumPaths.add(observer.mPath);
+            mAlbumWatches.get(observer.mPath);
+        } else {
+            // An album folder was added, removed or renamed. The changes inside album folders
+            // that are not watched are not reported, so all album folders of the directory are
+            // compared with their manifests.
+            getPendingChanges(observer.mDirectory).mDirectoryChanged = true;
+
+            // Files are probably about to be copied into new album folders
+            File albumDir = new File(observer.mPath, name);
+            if (observer.mDirectory.getType() == Directory.Type.PARENT_DIR
+                    && (event & (FileObserver.CREATE | FileObserver.MOVED_TO)) != 0 && albumDir.isDirectory()) {
+                watchAlbum(observer.mDirectory, albumDir.getAbsolutePath());
+            }
+        }
+        scheduleFlush();
+    }
+
+    private PendingChanges getPendingChanges(Directory directory) {
+        PendingChanges changes = mPendingChanges.get(directory.getID());
+        if (changes == null) {
+            changes = new PendingChanges(directory);
+            mPendingChanges.put(directory.getID(), changes);
+        }
+        return changes;
+    }
+
+    /*
+     * Wait for further events before synchronizing, such that copying a whole album only leads
+     * to a single synchronization
+     */
+    private void scheduleFlush() {
+        long now = SystemClock.uptimeMillis();
+        if (mFirstPendingTime == 0) {
+            mFirstPendingTime = now;
+        }
+        long delay = Math.min(DEBOUNCE_DELAY, mFirstPendingTime + MAX_DELAY - now);
+        mHandler.removeCallbacks(mFlushRunnable);
+        mHandler.postDelayed(mFlushRunnable, Math.max(0, delay));
+    }
+
+    private void flushPendingChanges() {
+        // Albums of all directories are synchronized together, such that an album moved from
+        // one directory to another keeps its progress
+        ArrayList<Directory> directories = new ArrayList<>();
+        LinkedHashMap<Directory, LinkedHashSet<String>> albumPaths = new LinkedHashMap<>();
+        for (PendingChanges changes : mPendingChanges.values()) {
+            if (changes.mDirectoryChanged) {
+                directories.add(changes.mDirectory);
+            } else {
+                albumPaths.put(changes.mDirectory, changes.mAlbumPaths);
+            }
+        }
+        if (!directories.isEmpty()) {
+            mSynchronizer.updateDirectories(directories);
+        }
+        if (!albumPaths.isEmpty()) {
+            mSynchronizer.updateAlbums(albumPaths);
+        }
+        mPendingChanges.clear();
+        mFirstPendingTime = 0;
+    }
+
+    private static class PendingChanges {
+        private final Directory mDirectory;
+        private final LinkedHashSet<String> mAlbumPaths = new LinkedHashSet<>();
+        private boolean mDirectoryChanged = false;
+
+        PendingChanges(Directory directory) {
+            mDirectory = directory;
+        }
+    }
+
+    /*
+     * Observer for a library directory or an album folder. Events are handled on the watcher thread.
+     */
+    private class PathObserver extends FileObserver {
+        private final Directory mDirectory;
+        private final String mPath;
+        private final boolean mIsAlbum;
+
+        PathObserver(Directory directory, String path, boolean isAlbum) {
+            super(path, WATCH_EVENTS);
+            mDirectory = directory;
+            mPath = new File(path).getAbsolutePath();
+            mIsAlbum = isAlbum;
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            int maskedEvent = event & FileObserver.ALL_EVENTS;
+            mHandler.post(() -> handleEvent(this, maskedEvent, path));
+        }
+    }
+}
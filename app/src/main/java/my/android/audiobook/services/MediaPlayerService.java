@@ -8,8 +8,6 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -17,10 +15,8 @@ import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
-import android.media.MediaMetadataRetriever;
 import android.media.MediaPlayer;
 import android.media.session.MediaSessionManager;
-import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
@@ -38,13 +34,14 @@ import android.widget.Toast;
 
 import my.android.audiobook.models.Album;
 import my.android.audiobook.models.AudioFile;
+import my.android.audiobook.helpers.CoverThumbnails;
 import my.android.audiobook.helpers.LockManager;
 import my.android.audiobook.receivers.MediaButtonIntentReceiver;
 import my.android.audiobook.callbacks.MediaSessionCallback;
 import my.android.audiobook.R;
 import my.android.audiobook.helpers.SleepTimer;
 import my.android.audiobook.activities.PlayActivity;
-import my.android.audiobook.data.BookContract;
+import my.android.audiobook.data.ProgressStore;
 import my.android.audiobook.utils.BitmapUtils;
 import my.android.audiobook.utils.StorageUtil;
 
@@ -86,7 +83,6 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
     private MediaSessionCompat mediaSession;
 
     // Metadata Retriever
-    MediaMetadataRetriever mMetadataRetriever;
 
     // AudioPlayer notification IDs
     private static final int NOTIFICATION_ID = 101;
@@ -132,7 +128,6 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
     public void onCreate() {
         super.onCreate();
         mBroadcaster = LocalBroadcastManager.getInstance(this);
-        mMetadataRetriever = new MediaMetadataRetriever();
 
         // Set up the shared preferences.
         mSharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
@@ -289,7 +284,7 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
     @Override
     public void onCompletion(MediaPlayer mp) {
         setCurrentPosition(getDuration());
-        updateAudioFileStatus();
+        ProgressStore.getInstance(this).flush();
 
         boolean playingNext = false;
         boolean autoplay = mSharedPreferences.getBoolean(getString(R.string.settings_autoplay_key), Boolean.getBoolean(getString(R.string.settings_autoplay_default)));
@@ -544,11 +539,11 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
         boolean coverFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_cover_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_cover_from_metadata_default)));
 
         if (coverFromMetadata) {
-            mMetadataRetriever.setDataSource(mActiveAudio.getPath());
-            byte[] coverData = mMetadataRetriever.getEmbeddedPicture();
+            // The embedded cover has been extracted as thumbnail during the synchronization
+            String thumbnailPath = CoverThumbnails.getPath(this, mActiveAudio.getAlbum(), CoverThumbnails.SIZE_NOTIFICATION);
 
-            if (coverData != null) {
-                notificationCover = BitmapUtils.decodeSampledBitmap(coverData, size, size);
+            if (thumbnailPath != null) {
+                notificationCover = BitmapUtils.decodeSampledBitmap(thumbnailPath, size, size);
             } else if (mActiveAudio.getCoverPath() != null) {
                 notificationCover = BitmapUtils.decodeSampledBitmap(mActiveAudio.getCoverPath(), size, size);
             } else {
@@ -584,15 +579,8 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
 
         Bitmap notificationCover = getNotificationImage(200);
 
-        String audioTitle = "";
         boolean titleFromMetadata = mSharedPreferences.getBoolean(getString(R.string.settings_title_from_metadata_key), Boolean.getBoolean(getString(R.string.settings_title_from_metadata_default)));
-        if (titleFromMetadata) {
-            mMetadataRetriever.setDataSource(mActiveAudio.getPath());
-            audioTitle = mMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-        }
-        if (audioTitle == null || audioTitle.isEmpty()) {
-            audioTitle = mActiveAudio.getTitle();
-        }
+        String audioTitle = mActiveAudio.getDisplayTitle(titleFromMetadata);
 
         // Set up intent to start PlayActivity when the notification is clicked
         Intent startActivityIntent = new Intent(this, PlayActivity.class);
@@ -728,6 +716,7 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
 
         if (mMediaPlayer != null) {
             updateAudioFileStatus();
+            ProgressStore.getInstance(this).flush();
             sendPlayStatusResult(MSG_STOP);
             mMediaPlayer.stop();
             setMediaPlaybackState(PlaybackStateCompat.STATE_STOPPED);
@@ -743,6 +732,7 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
         if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
             mMediaPlayer.pause();
             updateAudioFileStatus();
+            ProgressStore.getInstance(this).flush();
             sendPlayStatusResult(MSG_PAUSE);
             setMediaPlaybackState(PlaybackStateCompat.STATE_PAUSED);
             buildNotification();
@@ -855,11 +845,8 @@ public class MediaPlayerService extends Service implements MediaPlayer.OnComplet
         // Update the current active audio
         mActiveAudio.setCompletedTime(getCurrentPosition());
 
-        // Update the completedTime column of the audiofiles table
-        Uri uri = ContentUris.withAppendedId(BookContract.AudioEntry.CONTENT_URI, mActiveAudio.getID());
-        ContentValues values = new ContentValues();
-        values.put(BookContract.AudioEntry.COLUMN_COMPLETED_TIME, getCurrentPosition());
-        getContentResolver().update(uri, values, null, null);
+        // Record the completed time, it is written to the audiofiles table with the next flush
+        ProgressStore.getInstance(this).saveCompletedTime(mActiveAudio.getID(), getCurrentPosition());
     }
 
     /*
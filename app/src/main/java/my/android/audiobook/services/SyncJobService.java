@@ -0,0 +1,131 @@
+package my.android.audiobook.services;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import my.android.audiobook.R;
+import my.android.audiobook.helpers.Synchronizer;
+import my.android.audiobook.listeners.SynchronizationStateListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job that synchronizes the whole library periodically while the device is idle or charging, such
+ * that a refresh started by the user usually finds the album manifests unchanged. The UI picks up
+ * the results through the change notifications of the provider.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class SyncJobService extends JobService {
+    // The constraints of a job all have to be met, so idle and charging need a job each
+    private static final int JOB_ID_IDLE = 1;
+    private static final int JOB_ID_CHARGING = 2;
+
+    private Synchronizer mSynchronizer;
+
+    /*
+     * Schedule or cancel the jobs according to the settings. Jobs that are already scheduled with
+     * the same period are kept, as scheduling them again would restart their period.
+     */
+    public static void updateSchedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+
+        long period = getPeriod(context);
+        boolean idleScheduled = false;
+        boolean chargingScheduled = false;
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID_IDLE) {
+                idleScheduled = job.getIntervalMillis() == period;
+            } else if (job.getId() == JOB_ID_CHARGING) {
+                chargingScheduled = job.getIntervalMillis() == period;
+            }
+        }
+
+        if (period == 0) {
+            scheduler.cancel(JOB_ID_IDLE);
+            scheduler.cancel(JOB_ID_CHARGING);
+            return;
+        }
+        ComponentName service = new ComponentName(context, SyncJobService.class);
+        if (!idleScheduled) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, service)
+                    .setPeriodic(period)
+                    .setRequiresDeviceIdle(true)
+                    .setPersisted(true)
+                    .build());
+        }
+        if (!chargingScheduled) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setPeriodic(period)
+                    .setRequiresCharging(true)
+                    .setPersisted(true)
+                    .build());
+        }
+    }
+
+    /*
+     * Get the period of the background synchronization in milliseconds, 0 if it is disabled
+     */
+    private static long getPeriod(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String hours = prefs.getString(context.getString(R.string.settings_sync_period_key), context.getString(R.string.settings_sync_period_default));
+        try {
+            return TimeUnit.HOURS.toMillis(Math.max(0, Integer.parseInt(hours)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        // Both jobs usually become due around the same time, and the user might have refreshed
+        // the library recently. Skip the run if the library is still fresh enough.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+        long lastSync = prefs.getLong(getString(R.string.preference_last_library_sync_key), 0);
+        long age = System.currentTimeMillis() - lastSync;
+        if (age >= 0 && age < getPeriod(this) / 2) {
+            return false;
+        }
+
+        mSynchronizer = new Synchronizer(this);
+        mSynchronizer.setListener(new SynchronizationStateListener() {
+            @Override
+            public void onSynchronizationProgress(int processedAlbums, int albumCount) {
+            }
+
+            @Override
+            public void onSynchronizationContinuing() {
+            }
+
+            @Override
+            public void onSynchronizationFinished() {
+                // Without a time budget the library is synchronized in a single run
+                jobFinished(params, false);
+            }
+        });
+        mSynchronizer.updateDBTables();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The constraints are not met anymore. The synchronization continues from its checkpoint
+        // the next time the job runs.
+        mSynchronizer.setListener(null);
+        mSynchronizer.cancel();
+        return true;
+    }
+}
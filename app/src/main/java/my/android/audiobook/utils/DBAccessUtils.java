@@ -21,34 +21,22 @@ public class DBAccessUtils {
      * Get the completion time and the duration of the album with the given id
      */
     public static int[] getAlbumTimes(Context context, long albumID) {
-        // Query the database for the track completion times
-        String[] columns = new String[]{BookContract.AudioEntry.COLUMN_COMPLETED_TIME, BookContract.AudioEntry.COLUMN_TIME};
-        String sel = BookContract.AudioEntry.COLUMN_ALBUM + "=?";
-        String[] selArgs = {Long.toString(albumID)};
-
-        Cursor c = context.getContentResolver().query(BookContract.AudioEntry.CONTENT_URI,
-                columns, sel, selArgs, null, null);
+        // The sums over the audio files are stored with the album
+        Uri uri = ContentUris.withAppendedId(BookContract.AlbumEntry.CONTENT_URI, albumID);
+        String[] columns = new String[]{BookContract.AlbumEntry.COLUMN_COMPLETED_TIME, BookContract.AlbumEntry.COLUMN_TOTAL_TIME};
+        Cursor c = context.getContentResolver().query(uri, columns, null, null, null);
 
         int[] times = new int[2];
 
         if (c == null) {
             return times;
-        } else if (c.getCount() < 1) {
-            c.close();
-            return times;
         }
 
-        // Loop through the database rows and sum up the audio durations and completed times
-        int sumDuration = 0;
-        int sumCompletedTime = 0;
-        while (c.moveToNext()) {
-            sumDuration += c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_TIME));
-            sumCompletedTime += c.getInt(c.getColumnIndex(BookContract.AudioEntry.COLUMN_COMPLETED_TIME));
+        if (c.moveToFirst()) {
+            times[0] = c.getInt(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_COMPLETED_TIME));
+            times[1] = c.getInt(c.getColumnIndex(BookContract.AlbumEntry.COLUMN_TOTAL_TIME));
         }
         c.close();
-
-        times[0] = sumCompletedTime;
-        times[1] = sumDuration;
         return times;
     }
 
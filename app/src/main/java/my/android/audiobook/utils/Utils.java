@@ -10,7 +10,6 @@ import my.android.audiobook.services.MediaPlayerService;
 import my.android.audiobook.R;
 
 import java.io.File;
-import java.io.FilenameFilter;
 
 /**
  * Utility class for AudioBook
@@ -33,27 +32,6 @@ public class Utils {
         }
     }
 
-    /*
-     * Get path of the album cover image for the specified directory.
-     */
-    public static String getImagePath(File dir) {
-        // Search only for files that are images
-        FilenameFilter imgFilter = (dir1, filename) -> {
-            File sel = new File(dir1, filename);
-            // Only list files that are readable and images
-            return sel.getName().endsWith(".jpg") || sel.getName().endsWith(".jpeg") || sel.getName().endsWith(".png");
-        };
-
-        String[] fileList = dir.list(imgFilter);
-        if (fileList == null) return null;
-        if (fileList.length > 0) {
-            // No way of knowing which image is the correct one, so simply choose one.
-            return new File(dir + File.separator + fileList[0]).getAbsolutePath();
-        }
-        return null;
-    }
-
-
     /*
      * Bring milli seconds into a proper time format.
      * Taken from http://techin-android.blogspot.com/2012/01/millisecond-to-hhmmss-format-convertor.html
@@ -0,0 +1,167 @@
+package my.android.audiobook.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the journal of playback positions. Opening the file with a new journal stands in for the
+ * process that replays the journal after the previous one died.
+ */
+public class ProgressJournalTest {
+    private static final int CAPACITY = 256;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void createFile() {
+        mFile = new File(mTempFolder.getRoot(), "progress.journal");
+    }
+
+    @Test
+    public void newJournalIsEmpty() throws Exception {
+        assertTrue(new ProgressJournal(mFile).open().isEmpty());
+    }
+
+    @Test
+    public void appendedPositionsAreReplayed() throws Exception {
+        ProgressJournal journal = open();
+        assertTrue(journal.append(1, 1000));
+        assertTrue(journal.append(2, 2000));
+        // The last position of an audio file counts
+        assertTrue(journal.append(1, 1500));
+
+        Map<Long, Integer> positions = new ProgressJournal(mFile).open();
+        assertEquals(2, positions.size());
+        assertEquals(1500, (int) positions.get(1L));
+        assertEquals(2000, (int) positions.get(2L));
+    }
+
+    @Test
+    public void rewriteReplacesPositions() throws Exception {
+        ProgressJournal journal = open();
+        journal.append(1, 1000);
+        journal.append(2, 2000);
+        assertTrue(journal.rewrite(positions(3, 3000)));
+        journal.append(4, 4000);
+
+        assertEquals(positions(3, 3000, 4, 4000), new ProgressJournal(mFile).open());
+    }
+
+    @Test
+    public void rewritesAlternateBetweenRegions() throws Exception {
+        ProgressJournal journal = open();
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(journal.rewrite(positions(i, i * 1000)));
+            assertEquals(positions(i, i * 1000), new ProgressJournal(mFile).open());
+        }
+        // Fewer records than in the region before, the older records must not be replayed
+        assertTrue(journal.rewrite(new HashMap<>()));
+        assertTrue(new ProgressJournal(mFile).open().isEmpty());
+    }
+
+    @Test
+    public void fullJournalRejectsAppend() throws Exception {
+        ProgressJournal journal = open();
+        for (int i = 1; i <= CAPACITY; i++) {
+            assertTrue(journal.append(i, i));
+        }
+        assertFalse(journal.append(CAPACITY + 1, 0));
+        assertEquals(CAPACITY, new ProgressJournal(mFile).open().size());
+    }
+
+    @Test
+    public void failedRewriteKeepsPreviousGeneration() throws Exception {
+        ProgressJournal journal = open();
+        journal.append(1, 1000);
+        HashMap<Long, Integer> tooManyPositions = new HashMap<>();
+        for (long i = 1; i <= CAPACITY + 1; i++) {
+            tooManyPositions.put(i, 0);
+        }
+        assertFalse(journal.rewrite(tooManyPositions));
+
+        assertEquals(positions(1, 1000), new ProgressJournal(mFile).open());
+        assertTrue(journal.append(2, 2000));
+        assertEquals(positions(1, 1000, 2, 2000), new ProgressJournal(mFile).open());
+    }
+
+    @Test
+    public void rewriteIsOnlyPublishedByHeader() throws Exception {
+        ProgressJournal journal = open();
+        journal.append(1, 1000);
+        int generation = readGeneration();
+        assertTrue(journal.rewrite(positions(2, 2000)));
+
+        // The process died before the new generation was published
+        writeGeneration(generation);
+        assertEquals(positions(1, 1000), new ProgressJournal(mFile).open());
+    }
+
+    @Test
+    public void tornRecordEndsJournal() throws Exception {
+        ProgressJournal journal = open();
+        journal.append(1, 1000);
+        journal.append(2, 2000);
+        int generation = readGeneration();
+
+        // Corrupt the position of the second record, which no longer matches its checksum
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(8 + (generation & 1) * CAPACITY * 16 + 16 + 8);
+            file.writeInt(2001);
+        } finally {
+            file.close();
+        }
+        assertEquals(positions(1, 1000), new ProgressJournal(mFile).open());
+    }
+
+    /*
+     * Open a journal and rewrite it like the progress store does after opening it
+     */
+    private ProgressJournal open() throws Exception {
+        ProgressJournal journal = new ProgressJournal(mFile);
+        journal.rewrite(journal.open());
+        return journal;
+    }
+
+    private int readGeneration() throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            file.seek(4);
+            return file.readInt();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeGeneration(int generation) throws Exception {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(4);
+            file.writeInt(generation);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static HashMap<Long, Integer> positions(int... idsAndPositions) {
+        HashMap<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < idsAndPositions.length; i += 2) {
+            positions.put((long) idsAndPositions[i], idsAndPositions[i + 1]);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,90 @@
+package my.android.audiobook.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the diff of the synchronization without any database or file system access. The old
+ * list holds 100,000 paths, the new list misses 1% of them and contains 1% new ones. The best
+ * time of a few rounds is printed, the bound only catches a diff that is no longer linear.
+ */
+public class SortedDiffBenchmarkTest {
+    private static final int ENTRY_COUNT = 100000;
+    private static final int ROUNDS = 10;
+    // Time in milliseconds sorting and merging both lists may take at most
+    private static final long MAX_DIFF_TIME = 5000;
+
+    @Test
+    public void diffOfLargeLibrary() {
+        Random random = new Random(42);
+        ArrayList<String> oldPaths = new ArrayList<>();
+        ArrayList<String> newPaths = new ArrayList<>();
+        int insertedCount = 0;
+        int deletedCount = 0;
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            String path = String.format(Locale.ROOT, "/storage/emulated/0/Audiobooks/Author %04d/Book %06d", i % 1000, i);
+            int change = random.nextInt(100);
+            if (change != 0) {
+                oldPaths.add(path);
+            } else {
+                insertedCount++;
+            }
+            if (change != 1) {
+                newPaths.add(path);
+            } else {
+                deletedCount++;
+            }
+        }
+
+        long bestSortTime = Long.MAX_VALUE;
+        long bestMergeTime = Long.MAX_VALUE;
+        int[] counts = new int[3];
+        for (int round = 0; round < ROUNDS; round++) {
+            ArrayList<String> sortedOldPaths = new ArrayList<>(oldPaths);
+            ArrayList<String> sortedNewPaths = new ArrayList<>(newPaths);
+            Collections.shuffle(sortedOldPaths, random);
+            Collections.shuffle(sortedNewPaths, random);
+
+            long start = System.nanoTime();
+            SortedDiff.sort(sortedOldPaths, path -> path);
+            SortedDiff.sort(sortedNewPaths, path -> path);
+            long sorted = System.nanoTime();
+            counts[0] = counts[1] = counts[2] = 0;
+            SortedDiff.merge(sortedNewPaths, path -> path, sortedOldPaths, path -> path, new SortedDiff.Listener<String, String>() {
+                @Override
+                public void onInsert(String newItem) {
+                    counts[0]++;
+                }
+
+                @Override
+                public void onDelete(String oldItem) {
+                    counts[1]++;
+                }
+
+                @Override
+                public void onMatch(String newItem, String oldItem) {
+                    counts[2]++;
+                }
+            });
+            long merged = System.nanoTime();
+            bestSortTime = Math.min(bestSortTime, sorted - start);
+            bestMergeTime = Math.min(bestMergeTime, merged - sorted);
+        }
+
+        String result = String.format(Locale.ROOT, "%d entries: sort %.2f ms, merge %.2f ms, %d inserted, %d deleted, %d matched",
+                ENTRY_COUNT, bestSortTime / 1e6, bestMergeTime / 1e6, counts[0], counts[1], counts[2]);
+        System.out.println(result);
+
+        assertEquals(insertedCount, counts[0]);
+        assertEquals(deletedCount, counts[1]);
+        assertEquals(ENTRY_COUNT - insertedCount - deletedCount, counts[2]);
+        assertTrue(result + ", exceeds " + MAX_DIFF_TIME + " ms", (bestSortTime + bestMergeTime) / 1000000 <= MAX_DIFF_TIME);
+    }
+}
@@ -0,0 +1,141 @@
+package my.android.audiobook.helpers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the merge of two sorted lists. The new items are strings, the old items are string arrays
+ * of a key and a value, such that the matched old item can be told apart from the new one.
+ */
+public class SortedDiffTest {
+
+    @Test
+    public void insertsDeletesAndMatches() {
+        List<String> events = merge(Arrays.asList("a", "c", "d", "f"), Arrays.asList("b", "c", "e", "f"));
+        assertEquals(Arrays.asList("insert a", "delete b", "match c", "insert d", "delete e", "match f"), events);
+    }
+
+    @Test
+    public void everyItemIsReportedOnce() {
+        List<String> events = merge(Arrays.asList("a", "b", "c"), Arrays.asList("a", "b", "c"));
+        assertEquals(Arrays.asList("match a", "match b", "match c"), events);
+    }
+
+    @Test
+    public void emptyOldItemsAreAllInserted() {
+        List<String> events = merge(Arrays.asList("a", "b"), Collections.emptyList());
+        assertEquals(Arrays.asList("insert a", "insert b"), events);
+    }
+
+    @Test
+    public void emptyNewItemsAreAllDeleted() {
+        List<String> events = merge(Collections.emptyList(), Arrays.asList("a", "b"));
+        assertEquals(Arrays.asList("delete a", "delete b"), events);
+    }
+
+    @Test
+    public void bothEmpty() {
+        assertEquals(Collections.emptyList(), merge(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    public void duplicateNewKeyIsInserted() {
+        List<String> events = merge(Arrays.asList("a", "a", "b"), Arrays.asList("a", "b"));
+        assertEquals(Arrays.asList("match a", "insert a", "match b"), events);
+    }
+
+    @Test
+    public void duplicateOldKeyIsDeleted() {
+        List<String> events = merge(Arrays.asList("a", "b"), Arrays.asList("a", "a", "b"));
+        assertEquals(Arrays.asList("match a", "delete a", "match b"), events);
+    }
+
+    @Test
+    public void duplicateKeysAreMatchedPairwise() {
+        List<String> events = merge(Arrays.asList("a", "a"), Arrays.asList("a", "a", "a"));
+        assertEquals(Arrays.asList("match a", "match a", "delete a"), events);
+    }
+
+    @Test
+    public void matchesPairNewAndOldItem() {
+        List<String[]> oldItems = Arrays.asList(new String[]{"a", "1"}, new String[]{"b", "2"});
+        List<String> values = new ArrayList<>();
+        SortedDiff.merge(Arrays.asList("a", "b"), item -> item, oldItems, item -> item[0], new SortedDiff.Listener<String, String[]>() {
+            @Override
+            public void onInsert(String newItem) {
+                values.add("insert");
+            }
+
+            @Override
+            public void onDelete(String[] oldItem) {
+                values.add("delete");
+            }
+
+            @Override
+            public void onMatch(String newItem, String[] oldItem) {
+                values.add(newItem + oldItem[1]);
+            }
+        });
+        assertEquals(Arrays.asList("a1", "b2"), values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsortedNewItemsThrow() {
+        merge(Arrays.asList("b", "a"), Arrays.asList("a", "b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsortedOldItemsThrow() {
+        merge(Arrays.asList("a", "b"), Arrays.asList("c", "a"));
+    }
+
+    @Test
+    public void sortOrdersByKey() {
+        List<String[]> items = new ArrayList<>(Arrays.asList(new String[]{"c", "1"}, new String[]{"a", "2"}, new String[]{"b", "3"}));
+        SortedDiff.sort(items, item -> item[0]);
+        List<String> values = new ArrayList<>();
+        for (String[] item : items) {
+            values.add(item[0] + item[1]);
+        }
+        assertEquals(Arrays.asList("a2", "b3", "c1"), values);
+    }
+
+    @Test
+    public void sortedItemsCanBeMerged() {
+        List<String> newItems = new ArrayList<>(Arrays.asList("d", "b", "a"));
+        List<String> oldItems = new ArrayList<>(Arrays.asList("c", "a", "d"));
+        SortedDiff.sort(newItems, item -> item);
+        SortedDiff.sort(oldItems, item -> item);
+        assertEquals(Arrays.asList("match a", "insert b", "delete c", "match d"), merge(newItems, oldItems));
+    }
+
+    /*
+     * Merge the lists of keys and record the reported events in their order
+     */
+    private List<String> merge(List<String> newItems, List<String> oldItems) {
+        List<String> events = new ArrayList<>();
+        SortedDiff.merge(newItems, item -> item, oldItems, item -> item, new SortedDiff.Listener<String, String>() {
+            @Override
+            public void onInsert(String newItem) {
+                events.add("insert " + newItem);
+            }
+
+            @Override
+            public void onDelete(String oldItem) {
+                events.add("delete " + oldItem);
+            }
+
+            @Override
+            public void onMatch(String newItem, String oldItem) {
+                events.add("match " + newItem);
+            }
+        });
+        return events;
+    }
+}
@@ -0,0 +1,155 @@
+package my.android.audiobook.metadata;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the duration parsers with small fixture files. The fixtures only contain the headers the
+ * parsers read, the audio data is zeroed.
+ */
+public class DurationProbeTest {
+    // Durations in milliseconds of the fixtures
+    private static final long XING_DURATION = 1000L * 1152 * 1000 / 44100;
+    private static final long VBRI_DURATION = 500L * 1152 * 1000 / 44100;
+    // 20 frames of 104 bytes at 32 kbit/s
+    private static final long CBR_DURATION = 20 * 104 * 8 / 32;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Test
+    public void mp3Xing() throws Exception {
+        assertEquals(XING_DURATION, probe("xing.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp3XingWithId3Tags() throws Exception {
+        assertEquals(XING_DURATION, probe("xing_id3.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp3Vbri() throws Exception {
+        assertEquals(VBRI_DURATION, probe("vbri.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp3VbriWithId3Tags() throws Exception {
+        assertEquals(VBRI_DURATION, probe("vbri_id3.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp3ConstantBitrate() throws Exception {
+        assertEquals(CBR_DURATION, probe("cbr.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp3ConstantBitrateWithId3Tags() throws Exception {
+        // Neither the ID3v2 tag at the start nor the ID3v1 tag at the end count as audio data
+        assertEquals(CBR_DURATION, probe("cbr_id3.mp3", AudioFormat.MP3));
+    }
+
+    @Test
+    public void mp4MovieHeaderVersion0() throws Exception {
+        assertEquals(12345, probe("mvhd_v0.m4a", AudioFormat.M4A));
+    }
+
+    @Test
+    public void mp4MovieHeaderVersion1() throws Exception {
+        // The 64 bit duration does not fit into the 32 bit field of version 0
+        assertEquals(100000L * 1000, probe("mvhd_v1.m4b", AudioFormat.M4B));
+    }
+
+    @Test
+    public void flacStreamInfo() throws Exception {
+        assertEquals(7000, probe("streaminfo.flac", AudioFormat.FLAC));
+    }
+
+    @Test
+    public void oggVorbis() throws Exception {
+        assertEquals(5000, probe("vorbis.ogg", AudioFormat.OGG));
+    }
+
+    @Test
+    public void opusWithPreSkip() throws Exception {
+        // The last granule position includes the 312 samples of the pre-skip
+        assertEquals(3000, probe("pre_skip.opus", AudioFormat.OPUS));
+    }
+
+    @Test
+    public void wav() throws Exception {
+        // 8000 bytes of 8 bit mono samples at 8 kHz, behind a LIST chunk of odd size
+        assertEquals(1000, probe("pcm.wav", AudioFormat.WAV));
+    }
+
+    @Test
+    public void truncatedFilesAreUnknown() throws Exception {
+        String[] fixtures = {"xing_id3.mp3", "vbri_id3.mp3", "cbr_id3.mp3", "mvhd_v0.m4a", "mvhd_v1.m4b", "streaminfo.flac", "vorbis.ogg", "pre_skip.opus", "pcm.wav"};
+        // The files end within the ID3v2 tag of the MP3 files or within the first headers
+        int[] lengths = {0, 3, 9, 30};
+        for (String fixture : fixtures) {
+            AudioFormat format = AudioFormatRegistry.getFormatFromName(fixture);
+            byte[] data = readFixture(fixture);
+            for (int length : lengths) {
+                File file = write(Arrays.copyOf(data, length), fixture);
+                assertEquals(fixture + " truncated to " + length + " bytes", DurationProbe.UNKNOWN_DURATION, DurationProbe.probeDuration(file, format));
+            }
+        }
+    }
+
+    @Test
+    public void garbageIsUnknown() throws Exception {
+        byte[] garbage = new byte[16 * 1024];
+        new Random(42).nextBytes(garbage);
+        for (AudioFormat format : AudioFormat.values()) {
+            File file = write(garbage, "garbage" + format.getExtension());
+            assertEquals(format.name(), DurationProbe.UNKNOWN_DURATION, DurationProbe.probeDuration(file, format));
+        }
+    }
+
+    @Test
+    public void missingFileIsUnknown() {
+        File file = new File(mTempFolder.getRoot(), "missing.mp3");
+        assertEquals(DurationProbe.UNKNOWN_DURATION, DurationProbe.probeDuration(file));
+    }
+
+    private long probe(String fixture, AudioFormat format) throws URISyntaxException {
+        return DurationProbe.probeDuration(getFixture(fixture), format);
+    }
+
+    private File getFixture(String fixture) throws URISyntaxException {
+        return new File(getClass().getResource(fixture).toURI());
+    }
+
+    private byte[] readFixture(String fixture) throws IOException, URISyntaxException {
+        RandomAccessFile file = new RandomAccessFile(getFixture(fixture), "r");
+        try {
+            byte[] data = new byte[(int) file.length()];
+            file.readFully(data);
+            return data;
+        } finally {
+            file.close();
+        }
+    }
+
+    private File write(byte[] data, String name) throws IOException {
+        File file = new File(mTempFolder.getRoot(), name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(data);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}